@@ -0,0 +1,45 @@
+package com.mparticle.kits;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Decodes an image at the smallest power-of-two sample size that still covers the requested
+ * dimension and re-encodes it: JPEG for opaque images, PNG when there is transparency.
+ */
+class BitmapDownsampler implements PushPreprocessor.Downsampler {
+
+    private static final int JPEG_QUALITY = 85;
+
+    @Override
+    public boolean downsample(File source, File target, int maxDimension) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return false;
+
+        int sampleSize = 1;
+        while (Math.max(bounds.outWidth, bounds.outHeight) / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+        if (bitmap == null) return false;
+
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            return bitmap.hasAlpha()
+                    ? bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+                    : bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+
+import com.blueshift.Blueshift;
+import com.blueshift.model.UserInfo;
+import com.blueshift.util.DeviceUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the Blueshift SDK objects the kit uses on every callback: the {@link Blueshift} and
+ * {@link UserInfo} singletons and the device id.
+ * <p>
+ * Each one is looked up on first use and kept until it is invalidated. The kit invalidates
+ * the user info and device id on logout, everything on a configuration change, and the
+ * device id when the app reports that it was reset. A lookup that races with an
+ * invalidation is returned to its caller but not cached.
+ */
+class BlueshiftHandles {
+
+    private final Context context;
+
+    private volatile Blueshift blueshift;
+    private volatile UserInfo userInfo;
+    private volatile String deviceId;
+
+    // bumped by every invalidation, a lookup is only cached if it did not change meanwhile
+    private volatile int generation = 0;
+
+    private final AtomicLong deviceIdLookups = new AtomicLong();
+
+    BlueshiftHandles(Context context) {
+        this.context = context;
+    }
+
+    Context getContext() {
+        return context;
+    }
+
+    Blueshift blueshift() {
+        Blueshift instance = blueshift;
+        if (instance == null) {
+            int lookupGeneration = generation;
+            instance = Blueshift.getInstance(context);
+            if (lookupGeneration == generation) {
+                blueshift = instance;
+            }
+        }
+
+        return instance;
+    }
+
+    UserInfo userInfo() {
+        UserInfo instance = userInfo;
+        if (instance == null) {
+            int lookupGeneration = generation;
+            instance = UserInfo.getInstance(context);
+            if (lookupGeneration == generation) {
+                userInfo = instance;
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns the Blueshift device id. The first call may hit the disk or Play Services, so
+     * call it off the main thread.
+     */
+    String deviceId() {
+        String id = deviceId;
+        if (id == null) {
+            int lookupGeneration = generation;
+            id = DeviceUtils.getDeviceId(context);
+            deviceIdLookups.incrementAndGet();
+
+            if (id != null && lookupGeneration == generation) {
+                deviceId = id;
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * @return number of times the device id was resolved through the SDK
+     */
+    long getDeviceIdLookupCount() {
+        return deviceIdLookups.get();
+    }
+
+    void invalidateUser() {
+        generation++;
+        userInfo = null;
+        deviceId = null;
+    }
+
+    void invalidateDeviceId() {
+        generation++;
+        deviceId = null;
+    }
+
+    void invalidateAll() {
+        generation++;
+        blueshift = null;
+        userInfo = null;
+        deviceId = null;
+    }
+}
@@ -3,16 +3,17 @@ package com.mparticle.kits;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.blueshift.Blueshift;
 import com.blueshift.BlueshiftConstants;
-import com.blueshift.BlueshiftExecutor;
 import com.blueshift.BlueshiftLinksHandler;
 import com.blueshift.BlueshiftLinksListener;
 import com.blueshift.BlueshiftLogger;
@@ -21,7 +22,6 @@ import com.blueshift.inappmessage.InAppApiCallback;
 import com.blueshift.model.Configuration;
 import com.blueshift.model.UserInfo;
 import com.blueshift.util.BlueshiftUtils;
-import com.blueshift.util.DeviceUtils;
 import com.mparticle.MPEvent;
 import com.mparticle.MParticle;
 import com.mparticle.commerce.CommerceEvent;
@@ -29,50 +29,264 @@ import com.mparticle.consent.ConsentState;
 import com.mparticle.identity.MParticleUser;
 import com.mparticle.kits.blueshift.BuildConfig;
 
+import java.io.File;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BlueshiftKit extends KitIntegration implements
         KitIntegration.EventListener,
         KitIntegration.CommerceListener,
         KitIntegration.UserAttributeListener,
         KitIntegration.PushListener,
-        KitIntegration.IdentityListener {
+        KitIntegration.IdentityListener,
+        KitIntegration.ApplicationStateListener {
 
     private static final String TAG = "BlueshiftKit";
 
-    // settings
-    private static final String BLUESHIFT_EVENT_API_KEY = "eventApiKey";
-    private static final String BLUESHIFT_SHOULD_LOG_MP_EVENTS = "blueshift_should_log_mp_events";
-    private static final String BLUESHIFT_SHOULD_LOG_USER_EVENTS = "blueshift_should_log_user_events";
-    private static final String BLUESHIFT_SHOULD_LOG_COMMERCE_EVENTS = "blueshift_should_log_commerce_events";
-    private static final String BLUESHIFT_SHOULD_LOG_SCREEN_VIEW_EVENTS = "blueshift_should_log_screen_view_events";
+    // defaults
+    private static final int MAX_PENDING_INIT_TASKS = 200;
+    private static final String EVENT_JOURNAL_DIRECTORY = "blueshift_kit_journal";
+    private static final int MAX_IMPRESSION_ENTRIES = 500;
+    private static final long QUEUE_BLOCK_TIMEOUT_MS = 1000;
+    private static final long RESTART_WAIT_MS = 5000;
+    private static final long PUSH_INIT_WAIT_MS = 5000;
+    // the identify call only queues the request, the server needs a moment to know the user
+    private static final long INAPP_PREFETCH_DELAY_MS = 3000;
+    private static final String PUSH_IMAGE_CACHE_DIRECTORY = "blueshift_kit_push_images";
+    private static final long PUSH_IMAGE_CACHE_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int PUSH_IMAGE_MAX_DIMENSION = 1024;
+    private static final int PUSH_IMAGE_THREADS = 2;
+
+    // startup phases
+    public static final String STARTUP_PHASE_VALIDATE = "validate";
+    public static final String STARTUP_PHASE_CONFIGURE = "configure";
+    public static final String STARTUP_PHASE_SDK_INIT = "sdk_init";
+    public static final String STARTUP_PHASE_REPLAY = "replay";
+    public static final String STARTUP_PHASE_TOTAL = "total";
+
+    // kit preferences
+    private static final String PREF_KEY_IDENTITIES_HASH = "blueshift.identities.hash";
+    private static final String PREF_KEY_PUSH_TOKEN_HASH = "blueshift.push_token.hash";
+    private static final String PREF_KEY_CONSENT_HASH = "blueshift.consent.hash";
+    private static final String PREF_KEY_ERROR_BUDGET_TOKENS = "blueshift.error_budget.tokens";
+    private static final String PREF_KEY_ERROR_BUDGET_REFILLED_AT = "blueshift.error_budget.refilled_at";
 
     // payload
     private static final String BSFT_KIT_VERSION = "bsft_mparticle_kit_version";
     private static final String BSFT_MESSAGE_UUID = "bsft_message_uuid";
 
     // local configuration
-    private static Configuration blueshiftConfiguration;
-    private boolean shouldLogMPEvents = false;
-    private boolean shouldLogUserEvents = true;
-    private boolean shouldLogCommerceEvents = false;
-    private boolean shouldLogScreenViewEvents = false;
+    private static volatile ConfigurationFactory configurationFactory;
+    private static StartupTimingListener startupTimingListener;
+    private static Executor appExecutor;
+    private static final AtomicInteger inAppActivities = new AtomicInteger();
+
+    // process-wide, like the static link methods that use them: a link leads to the same
+    // place whatever kit instance saw it
+    private static final DeepLinkCache linkCache = new DeepLinkCache();
+    private static BlueshiftLinksHandler linksHandler;
+
+    // configuration this instance initialized the SDK with, never shared with other instances
+    private volatile Configuration blueshiftConfiguration;
+
+    // the settings in effect; the switches and rules below are copied from it
+    private volatile KitSettings kitSettings = KitSettings.EMPTY;
+    private volatile boolean shouldLogMPEvents = false;
+    private volatile boolean shouldLogUserEvents = true;
+    private volatile boolean shouldLogCommerceEvents = false;
+    private volatile boolean shouldLogScreenViewEvents = false;
+    private volatile boolean mapProductViews = false;
+
+    // channels the user's consent leaves open, compiled by the ConsentGate of the settings
+    // each time the consent state or the settings change
+    private volatile int consentMask = ConsentGate.ALL;
+    private ConsentState consentState;
+    private final Object consentLock = new Object();
+
+    // opt-out lifecycle: the executors and queues are torn down on opt-out and built again
+    // on the first call after opting back in. The fields they live in are volatile and may be
+    // nulled at any time, so callers read each of them once into a local.
+    private static final int STATE_RUNNING = 0;
+    private static final int STATE_OPTED_OUT = 1;
+    private static final int STATE_STOPPED = 2;
+    private volatile int runState = STATE_RUNNING;
+    private final Object lifecycleLock = new Object();
+    private final AtomicBoolean initStarted = new AtomicBoolean(false);
+
+    private BlueshiftHandles handles;
+    // takes the events instead of the SDK when the kit was started without it
+    private final EventBatcher.Sink sdkStandIn;
+    private volatile KitExecutor kitWorker;
+    private volatile IdentifyScheduler identifyScheduler;
+    private volatile UserInfoWriter userInfoWriter;
+    private volatile IdentityFingerprint identityFingerprint;
+    private final UserAttributeDelta userAttributes = new UserAttributeDelta();
+    private volatile EventBatcher eventBatcher;
+    private volatile ForwardingQueue forwardingQueue;
+    private volatile ForwardingQueue priorityQueue;
+    private volatile NameMatcher priorityEvents;
+    private volatile EventFilter eventFilter;
+    private volatile ImpressionAggregator impressionAggregator;
+    private volatile EventJournal eventJournal;
+    private volatile boolean prefetchPushLinks = false;
+    private volatile InAppPrefetcher inAppPrefetcher;
+    private volatile DiagnosticForwarder diagnostics;
+    private volatile PushPreprocessor pushPreprocessor;
+    private volatile ExecutorService pushImagePool;
+    private final CommerceExpander commerceExpander = new CommerceExpander(new ProductSerializer());
+    private final InitGate initGate = new InitGate(MAX_PENDING_INIT_TASKS);
+    private final KitMetrics metrics = KitMetrics.getInstance();
+
+    private final Runnable inAppPrefetchTask = new Runnable() {
+        @Override
+        public void run() {
+            // read once, an opt-out on another thread may null it meanwhile
+            InAppPrefetcher prefetcher = inAppPrefetcher;
+            if (prefetcher != null && runState == STATE_RUNNING) {
+                prefetcher.prefetch();
+            }
+        }
+    };
+
+    // push handling
+
+    /**
+     * Receives the time taken by each phase of the kit startup. Phases are reported in the
+     * order they complete, on the thread that ran them.
+     */
+    public interface StartupTimingListener {
+        void onStartupPhaseCompleted(@NonNull String phase, long durationMillis);
+    }
+
+    /**
+     * Creates the Blueshift configuration of a kit instance. The kit sets the API key from the
+     * mParticle settings, and the app icon if there is none, on the configuration it gets.
+     */
+    public interface ConfigurationFactory {
+        @NonNull
+        Configuration newConfiguration();
+    }
+
+    /**
+     * Makes every kit instance use the given configuration object, and set its API key and app
+     * icon on it.
+     *
+     * @deprecated the instances share the app's object and see each other's changes. The SDK
+     * offers no way to copy a configuration, so use {@link #setBlueshiftConfigFactory} to give
+     * each instance one of its own.
+     */
+    @Deprecated
+    public static void setBlueshiftConfig(@NonNull final Configuration config) {
+        configurationFactory = new ConfigurationFactory() {
+            @NonNull
+            @Override
+            public Configuration newConfiguration() {
+                return config;
+            }
+        };
+    }
+
+    /**
+     * Sets the factory kit instances get their Blueshift configuration from when they are
+     * created. Instances created before the call keep their configuration.
+     *
+     * @param factory factory returning a new configuration per call, or null for the defaults
+     */
+    public static void setBlueshiftConfigFactory(@Nullable ConfigurationFactory factory) {
+        configurationFactory = factory;
+    }
+
+    public static void setStartupTimingListener(@Nullable StartupTimingListener listener) {
+        startupTimingListener = listener;
+    }
+
+    public BlueshiftKit() {
+        sdkStandIn = null;
+    }
+
+    /**
+     * Creates a kit already running with the given settings, as if the SDK had come up, that
+     * never touches the SDK: its events go to {@code sdkStandIn}. Lets the tests measure the
+     * kit's own work.
+     */
+    BlueshiftKit(KitConfiguration configuration, Map<String, String> settings, EventBatcher.Sink sdkStandIn) {
+        this.sdkStandIn = sdkStandIn;
+
+        // set before the start, so it is not taken for a settings reload
+        setConfiguration(configuration);
+
+        // there is no context, the settings must leave the push image cache off
+        KitSettings snapshot = new KitSettings(settings);
+        applySettings(snapshot);
+        startRuntime(snapshot, null);
+        initGate.open();
+    }
+
+    /**
+     * Runs the kit's work (SDK calls, disk writes, batch flushes) on the given executor instead
+     * of the kit's own worker thread. The kit still runs its tasks one at a time and in order.
+     * Must be called before mParticle starts the kit.
+     *
+     * @param executor executor to use, or null for the kit's own worker thread
+     */
+    public static void setExecutor(@Nullable Executor executor) {
+        appExecutor = executor;
+    }
+
+    /**
+     * Turns the kit metrics on or off. Metrics are off by default and cost next to nothing
+     * while off.
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        KitMetrics.getInstance().setEnabled(enabled);
+    }
+
+    /**
+     * Returns a copy of the kit metrics as name/value pairs, ready to be shipped to the app's
+     * own telemetry. Counters are cumulative since the process started or since the last
+     * {@link #resetMetrics()}; latency histograms are in microseconds.
+     *
+     * @return unmodifiable map of metric name to value
+     */
+    @NonNull
+    public static Map<String, Long> getMetricsSnapshot() {
+        return KitMetrics.getInstance().snapshot();
+    }
 
-    public static void setBlueshiftConfig(@NonNull Configuration config) {
-        blueshiftConfiguration = config;
+    public static void resetMetrics() {
+        KitMetrics.getInstance().reset();
     }
 
+    /**
+     * Registers the activity for in-app messages. The SDK shows the messages it has stored,
+     * which with {@code blueshift_inapp_prefetch} enabled were fetched after the user was
+     * identified, so nothing waits on the network.
+     */
     public static void registerForInAppMessages(@NonNull Activity activity) {
         Blueshift.getInstance(activity).registerForInAppMessages(activity);
+        inAppActivities.incrementAndGet();
     }
 
     public static void unregisterForInAppMessages(@NonNull Activity activity) {
         Blueshift.getInstance(activity).unregisterForInAppMessages(activity);
+
+        int count;
+        do {
+            count = inAppActivities.get();
+        } while (count > 0 && !inAppActivities.compareAndSet(count, count - 1));
     }
 
     public static void fetchInAppMessages(@NonNull Context context, InAppApiCallback callback) {
@@ -87,25 +301,92 @@ public class BlueshiftKit extends KitIntegration implements
         return BlueshiftLinksHandler.isBlueshiftLink(uri);
     }
 
+    /**
+     * Hands the link in the intent to Blueshift. When the kit already knows where the link
+     * leads, the listener gets the destination right away; the SDK still processes the link
+     * to track the click.
+     */
     public static void handleBlueshiftUniversalLinks(Context context, Intent intent, BlueshiftLinksListener listener) {
-        new BlueshiftLinksHandler(context).handleBlueshiftUniversalLinks(intent, listener);
+        Uri link = intent != null ? intent.getData() : null;
+
+        if (deliverCachedLink(link, listener)) {
+            getLinksHandler(context).handleBlueshiftUniversalLinks(intent, new CachingLinksListener(link, null));
+        } else {
+            getLinksHandler(context).handleBlueshiftUniversalLinks(intent, new CachingLinksListener(link, listener));
+        }
     }
 
+    /**
+     * Same as {@link #handleBlueshiftUniversalLinks(Context, Intent, BlueshiftLinksListener)}
+     * for a link that did not arrive in an intent.
+     */
     public static void handleBlueshiftUniversalLinks(Context context, Uri link, Bundle extras, BlueshiftLinksListener listener) {
-        new BlueshiftLinksHandler(context).handleBlueshiftUniversalLinks(link, extras, listener);
+        if (deliverCachedLink(link, listener)) {
+            getLinksHandler(context).handleBlueshiftUniversalLinks(link, extras, new CachingLinksListener(link, null));
+        } else {
+            getLinksHandler(context).handleBlueshiftUniversalLinks(link, extras, new CachingLinksListener(link, listener));
+        }
     }
 
-    private boolean getBooleanSettings(Map<String, String> settings, String key, boolean defaultValue) {
-        if (settings != null && key != null && settings.containsKey(key)) {
-            try {
-                String val = settings.get(key);
-                return Boolean.parseBoolean(val);
-            } catch (Exception e) {
-                BlueshiftLogger.e(TAG, e);
+    /**
+     * @return how long the Blueshift link took to resolve in milliseconds, or -1 if the kit
+     * does not know where it leads
+     */
+    public static long getLinkResolveMillis(@NonNull Uri link) {
+        return linkCache.getResolveMillis(link.toString());
+    }
+
+    private static synchronized BlueshiftLinksHandler getLinksHandler(Context context) {
+        if (linksHandler == null) {
+            linksHandler = new BlueshiftLinksHandler(context.getApplicationContext());
+        }
+
+        return linksHandler;
+    }
+
+    private static boolean deliverCachedLink(Uri link, BlueshiftLinksListener listener) {
+        if (link == null || listener == null) return false;
+
+        String destination = linkCache.get(link.toString());
+        if (destination == null) return false;
+
+        listener.onLinkProcessingStart();
+        listener.onLinkProcessingComplete(Uri.parse(destination));
+        return true;
+    }
+
+    /**
+     * Stores the destination the SDK resolved for a link, and passes the callbacks on to the
+     * app's listener if there is one.
+     */
+    private static class CachingLinksListener implements BlueshiftLinksListener {
+        private final Uri link;
+        private final BlueshiftLinksListener listener;
+        private final long startNanos = System.nanoTime();
+
+        CachingLinksListener(Uri link, BlueshiftLinksListener listener) {
+            this.link = link;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onLinkProcessingStart() {
+            if (listener != null) listener.onLinkProcessingStart();
+        }
+
+        @Override
+        public void onLinkProcessingComplete(Uri destination) {
+            if (link != null && destination != null && !destination.equals(link)) {
+                linkCache.put(link.toString(), destination.toString(), startNanos);
             }
+
+            if (listener != null) listener.onLinkProcessingComplete(destination);
         }
 
-        return defaultValue;
+        @Override
+        public void onLinkProcessingError(Exception e, Uri destination) {
+            if (listener != null) listener.onLinkProcessingError(e, destination);
+        }
     }
 
     private void logTrackingConfig(String eventName, boolean status, String key) {
@@ -115,148 +396,743 @@ public class BlueshiftKit extends KitIntegration implements
         );
     }
 
-    private void logSettings(Map<String, String> settings) {
-        try {
-            StringBuilder builder = new StringBuilder();
-            builder.append("mParticle settings\n");
-            builder.append("{\n");
-            Set<String> keys = settings.keySet();
-            boolean first = true;
-            for (String key : keys) {
-                if (first) {
-                    first = false;
-                    builder.append("\t");
-                } else {
-                    builder.append(",");
-                    builder.append("\n");
-                    builder.append("\t");
+    /**
+     * Logs the tracking switches through the SDK logger. The settings dump is only built when
+     * debug logging is enabled for the kit tag, e.g. with
+     * {@code adb shell setprop log.tag.BlueshiftKit DEBUG}.
+     */
+    private void logSettings(KitSettings settings) {
+        logTrackingConfig("MP", shouldLogMPEvents, KitSettings.SHOULD_LOG_MP_EVENTS);
+        logTrackingConfig("Commerce", shouldLogCommerceEvents, KitSettings.SHOULD_LOG_COMMERCE_EVENTS);
+        logTrackingConfig("Identify", shouldLogUserEvents, KitSettings.SHOULD_LOG_USER_EVENTS);
+        logTrackingConfig("ScreenView", shouldLogScreenViewEvents, KitSettings.SHOULD_LOG_SCREEN_VIEW_EVENTS);
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            BlueshiftLogger.d(TAG, settings.describe());
+        }
+    }
+
+    /**
+     * Makes the given settings the ones in effect. The tracking switches, the event filter
+     * and the priority events change on the spot; the queue, batching, journal, impression,
+     * prefetch and error forwarding settings take effect when the kit starts and keep their values until the next
+     * start.
+     */
+    private void applySettings(KitSettings settings) {
+        KitSettings previous = kitSettings;
+        kitSettings = settings;
+
+        shouldLogMPEvents = settings.shouldLogMPEvents();
+        shouldLogUserEvents = settings.shouldLogUserEvents();
+        shouldLogCommerceEvents = settings.shouldLogCommerceEvents();
+        shouldLogScreenViewEvents = settings.shouldLogScreenViewEvents();
+        mapProductViews = settings.shouldMapProductViews();
+
+        if (previous == KitSettings.EMPTY || !settings.hasSameRoutingAs(previous)) {
+            eventFilter = settings.getEventFilter();
+            priorityEvents = settings.getPriorityEvents();
+        }
+
+        synchronized (consentLock) {
+            consentMask = settings.getConsentGate().compile(consentState);
+        }
+    }
+
+    /**
+     * Compiles the channels the new consent state leaves open, against the settings in effect.
+     */
+    private void updateConsent(ConsentState state) {
+        synchronized (consentLock) {
+            consentState = state;
+            consentMask = kitSettings.getConsentGate().compile(state);
+        }
+    }
+
+    /**
+     * @return true if the user's consent leaves the channel open, otherwise counts the call
+     * as blocked
+     */
+    private boolean consentAllows(int channel) {
+        if ((consentMask & channel) != 0) return true;
+
+        metrics.increment(KitMetrics.CONSENT_BLOCKED);
+        return false;
+    }
+
+    private void reportStartupPhase(String phase, long startNanos) {
+        long durationMillis = (System.nanoTime() - startNanos) / 1000000L;
+        BlueshiftLogger.d(TAG, "Startup phase \"" + phase + "\" took " + durationMillis + "ms");
+
+        StartupTimingListener listener = startupTimingListener;
+        if (listener != null) {
+            try {
+                listener.onStartupPhaseCompleted(phase, durationMillis);
+            } catch (Exception e) {
+                BlueshiftLogger.e(TAG, e);
+            }
+        }
+    }
+
+    @Override
+    protected List<ReportingMessage> onKitCreate(final Map<String, String> settings, final Context context) {
+        final long startNanos = System.nanoTime();
+
+        final KitSettings snapshot = new KitSettings(settings);
+
+        String apiKey = snapshot.getApiKey();
+        if (KitUtils.isEmpty(apiKey)) {
+            throw new IllegalArgumentException("Blueshift requires a valid API key");
+        }
+
+        Configuration configuration = newBlueshiftConfiguration();
+        configuration.setApiKey(apiKey);
+        blueshiftConfiguration = configuration;
+
+        // the consent known so far, until mParticle reports a change
+        FilteredMParticleUser currentUser = getCurrentUser();
+        if (currentUser != null) {
+            consentState = currentUser.getConsentState();
+        }
+
+        applySettings(snapshot);
+
+        handles = new BlueshiftHandles(context);
+
+        // errors and exceptions are rate limited per fingerprint, breadcrumbs ride along
+        if (snapshot.shouldForwardErrors()) {
+            diagnostics = newDiagnosticForwarder(snapshot);
+        }
+
+        startRuntime(snapshot, context);
+
+        reportStartupPhase(STARTUP_PHASE_VALIDATE, startNanos);
+
+        if (snapshot.isAsyncInit()) {
+            // the heavy part of the startup runs on the kit worker. events, screens and
+            // identities logged meanwhile are held by the init gate and replayed after.
+            kitWorker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        initializeBlueshift(snapshot, context, startNanos);
+                    } catch (Exception e) {
+                        openGateAfterFailedInit(e);
+                    }
+                }
+            });
+        } else {
+            initializeBlueshift(snapshot, context, startNanos);
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates the executors and the queues the kit forwards through. Runs when the kit is
+     * created and again when it restarts after an opt-out.
+     */
+    private void startRuntime(final KitSettings snapshot, Context context) {
+        // every side effect of the kit goes through one serial queue: events reach the SDK in
+        // the order they were logged and a pending UserInfo write always lands before the
+        // identify that follows it.
+        kitWorker = KitExecutor.create(appExecutor);
+
+        identifyScheduler = new IdentifyScheduler(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        fireBlueshiftIdentify();
+                    }
+                },
+                kitWorker,
+                snapshot.getIdentifyCoalesceWindowMillis()
+        );
+
+        // a batch size of 1 keeps the events flowing straight to the SDK. batched events are
+        // only left to the SDK's own batching too when the settings ask for it, it adds the
+        // SDK's interval to their latency
+        int batchSize = snapshot.getEventBatchSize();
+        final boolean canBatch = batchSize > 1 && snapshot.shouldUseSdkBatching();
+
+        // bounds the events waiting for the SDK, so an event storm cannot exhaust the memory
+        final ForwardingQueue queue = new ForwardingQueue(
+                new EventBatcher.JournaledSink() {
+                    @Override
+                    public void track(String eventName, HashMap<String, Object> params, long seq) {
+                        dispatchEvent(eventName, params, seq, canBatch);
+                    }
+                },
+                new ForwardingQueue.DropListener() {
+                    @Override
+                    public void onDropped(String eventName, HashMap<String, Object> params, long seq) {
+                        onEventDropped(seq);
+                    }
+                },
+                kitWorker,
+                snapshot.getQueueCapacity(),
+                snapshot.getQueuePolicy(),
+                QUEUE_BLOCK_TIMEOUT_MS,
+                new Random()
+        );
+        forwardingQueue = queue;
+
+        // priority events skip the regular backlog, not the bound. they are sent on their own,
+        // the SDK batch could hold them back.
+        priorityQueue = new ForwardingQueue(
+                new EventBatcher.JournaledSink() {
+                    @Override
+                    public void track(String eventName, HashMap<String, Object> params, long seq) {
+                        dispatchEvent(eventName, params, seq, false);
+                    }
+                },
+                new ForwardingQueue.DropListener() {
+                    @Override
+                    public void onDropped(String eventName, HashMap<String, Object> params, long seq) {
+                        onEventDropped(seq);
+                    }
+                },
+                kitWorker,
+                true,
+                snapshot.getQueueCapacity(),
+                snapshot.getQueuePolicy(),
+                QUEUE_BLOCK_TIMEOUT_MS,
+                new Random()
+        );
+
+        if (batchSize > 1) {
+            eventBatcher = new EventBatcher(
+                    new EventBatcher.JournaledSink() {
+                        @Override
+                        public void track(String eventName, HashMap<String, Object> params, long seq) {
+                            queue.offer(eventName, params, seq);
+                        }
+                    },
+                    kitWorker,
+                    batchSize,
+                    snapshot.getEventBatchIntervalMillis()
+            );
+        }
+
+        // impressions and promotions are summarized per window instead of sent one by one
+        if (snapshot.shouldLogImpressions()) {
+            impressionAggregator = new ImpressionAggregator(
+                    new EventBatcher.Sink() {
+                        @Override
+                        public void track(String eventName, HashMap<String, Object> params) {
+                            trackKitEvent(eventName, params);
+                        }
+                    },
+                    kitWorker,
+                    snapshot.getImpressionWindowMillis(),
+                    MAX_IMPRESSION_ENTRIES
+            );
+        }
+
+        // in-app messages are fetched in the background a little after each identify call
+        if (snapshot.shouldPrefetchInAppMessages()) {
+            inAppPrefetcher = new InAppPrefetcher(
+                    new InAppPrefetcher.InAppClient() {
+                        @Override
+                        public void fetch(InAppApiCallback callback) {
+                            handles.blueshift().fetchInAppMessages(callback);
+                        }
+
+                        @Override
+                        public void displayIfRegistered() {
+                            if (inAppActivities.get() > 0 && runState == STATE_RUNNING) {
+                                handles.blueshift().displayInAppMessages();
+                            }
+                        }
+                    },
+                    snapshot.getInAppPrefetchMaxPerSession(),
+                    snapshot.getInAppPrefetchMinIntervalMillis()
+            );
+        }
+
+        // push images are downloaded in parallel while the receive call waits for them
+        if (snapshot.shouldPrefetchPushImages()) {
+            pushImagePool = newPushImagePool();
+            pushPreprocessor = new PushPreprocessor(
+                    new File(context.getCacheDir(), PUSH_IMAGE_CACHE_DIRECTORY),
+                    PUSH_IMAGE_CACHE_MAX_BYTES,
+                    PUSH_IMAGE_MAX_DIMENSION,
+                    snapshot.getPushImageBudgetMillis(),
+                    pushImagePool,
+                    new BitmapDownsampler()
+            );
+        }
+
+        // only links that carry their destination are resolved, nothing goes to the network
+        prefetchPushLinks = snapshot.shouldPrefetchPushLinks();
+    }
+
+    /**
+     * The budget shared by all errors is kept in the kit preferences, so a crash loop cannot
+     * reset it by restarting the process.
+     */
+    private DiagnosticForwarder newDiagnosticForwarder(KitSettings snapshot) {
+        final SharedPreferences preferences = getKitPreferences();
+
+        final DiagnosticForwarder forwarder = new DiagnosticForwarder(
+                new EventBatcher.Sink() {
+                    @Override
+                    public void track(String eventName, HashMap<String, Object> params) {
+                        // consent and filter were checked before the budget was spent
+                        forwardWhenInitialized(eventName, params);
+                        // at most a few writes a minute, bounded by the budget itself; applied
+                        // off the caller's thread, which is often the main one
+                        persistErrorBudget(preferences);
+                    }
+                },
+                snapshot.getErrorMaxPerMinute(),
+                snapshot.getBreadcrumbCapacity()
+        );
+
+        if (preferences.contains(PREF_KEY_ERROR_BUDGET_TOKENS)) {
+            forwarder.restoreTotalBudget(
+                    preferences.getInt(PREF_KEY_ERROR_BUDGET_TOKENS, DiagnosticForwarder.MAX_TOTAL_PER_MINUTE),
+                    preferences.getLong(PREF_KEY_ERROR_BUDGET_REFILLED_AT, 0)
+            );
+        }
+
+        return forwarder;
+    }
+
+    private void persistErrorBudget(SharedPreferences preferences) {
+        DiagnosticForwarder forwarder = diagnostics;
+        if (forwarder == null) return;
+
+        preferences.edit()
+                .putInt(PREF_KEY_ERROR_BUDGET_TOKENS, forwarder.getTotalTokens())
+                .putLong(PREF_KEY_ERROR_BUDGET_REFILLED_AT, forwarder.getTotalRefilledAtMillis())
+                .apply();
+    }
+
+    private static Configuration newBlueshiftConfiguration() {
+        ConfigurationFactory factory = configurationFactory;
+        Configuration configuration = factory != null ? factory.newConfiguration() : null;
+
+        if (configuration == null) {
+            BlueshiftLogger.d(TAG, "Blueshift configuration is not provided. Using the default one.");
+            configuration = new Configuration();
+        }
+
+        return configuration;
+    }
+
+    private void initializeBlueshift(KitSettings settings, Context context, long startNanos) {
+        // an initialization discarded by an opt-out is started again by the restart
+        if (!initStarted.compareAndSet(false, true)) return;
+
+        long phaseStartNanos = System.nanoTime();
+
+        logSettings(settings);
+
+        // set app-icon as notification icon if not set
+        if (blueshiftConfiguration.getAppIcon() == 0) {
+            try {
+                ApplicationInfo applicationInfo = getContext().getApplicationInfo();
+                blueshiftConfiguration.setAppIcon(applicationInfo.icon);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Blueshift requires a valid app icon resource id");
+            }
+        }
+
+        reportStartupPhase(STARTUP_PHASE_CONFIGURE, phaseStartNanos);
+        phaseStartNanos = System.nanoTime();
+
+        handles.blueshift().initialize(blueshiftConfiguration);
+        // on the same lane as the identify calls, so a write always lands before the next identify
+        userInfoWriter = new UserInfoWriter(handles, kitWorker.priorityLane());
+
+        identityFingerprint = loadIdentityFingerprint();
+
+        if (settings.isEventJournalEnabled()) {
+            openEventJournal(context, settings.getEventJournalMaxBytes());
+        }
+
+        reportStartupPhase(STARTUP_PHASE_SDK_INIT, phaseStartNanos);
+        phaseStartNanos = System.nanoTime();
+
+        int replayed = initGate.open();
+        if (replayed > 0 || initGate.getDroppedCount() > 0) {
+            BlueshiftLogger.d(TAG, "Replayed " + replayed + " calls logged during startup, dropped " + initGate.getDroppedCount());
+        }
+
+        reportStartupPhase(STARTUP_PHASE_REPLAY, phaseStartNanos);
+        reportStartupPhase(STARTUP_PHASE_TOTAL, startNanos);
+    }
+
+    /**
+     * Opens the event journal and forwards the events the previous process journaled but did
+     * not hand over to the SDK. They are already in the journal, so they skip the append.
+     */
+    private void openEventJournal(Context context, long maxBytes) {
+        EventJournal journal = new EventJournal(new File(context.getFilesDir(), EVENT_JOURNAL_DIRECTORY), kitWorker, maxBytes);
+        List<EventJournal.Record> records = journal.open();
+        eventJournal = journal;
+
+        if (!records.isEmpty()) {
+            BlueshiftLogger.d(TAG, "Replaying " + records.size() + " journaled events");
+
+            for (EventJournal.Record record : records) {
+                enqueueEvent(record.eventName, record.params, record.seq);
+            }
+        }
+    }
+
+    /**
+     * Runs the task now if the Blueshift SDK is initialized, otherwise holds it until the
+     * initialization completes.
+     */
+    private void runWhenInitialized(Runnable task) {
+        initGate.runOrBuffer(task);
+    }
+
+    /**
+     * Same as {@link #runWhenInitialized(Runnable)} for an identity, consent or push token
+     * update, which is never dropped to make room for events.
+     */
+    private void runIdentityWhenInitialized(Runnable task) {
+        initGate.runOrBufferIdentity(task);
+    }
+
+    /**
+     * Called when the initialization on the kit worker fails. The calls held by the init gate
+     * would otherwise wait forever, so they go to the SDK as they would have after a
+     * synchronous initialization.
+     */
+    private void openGateAfterFailedInit(Exception e) {
+        BlueshiftLogger.e(TAG, e);
+
+        if (userInfoWriter == null) {
+            userInfoWriter = new UserInfoWriter(handles, kitWorker.priorityLane());
+        }
+        if (identityFingerprint == null) {
+            identityFingerprint = loadIdentityFingerprint();
+        }
+
+        int replayed = initGate.open();
+        BlueshiftLogger.w(TAG, "Blueshift initialization failed, replayed " + replayed + " calls logged during startup");
+    }
+
+    @Override
+    public String getName() {
+        return "Blueshift";
+    }
+
+    // ** event logging support methods **
+
+    /**
+     * Checks the event against the allowlist, denylist and sampling rules from the settings.
+     * Screen views are matched by screen name and commerce events by product action.
+     */
+    private boolean passesEventFilter(String eventName) {
+        return eventFilter == null || eventFilter.shouldForward(eventName);
+    }
+
+    /**
+     * Sends the event to Blueshift, through the event journal and batcher when enabled.
+     */
+    private void forwardEvent(String eventName, HashMap<String, Object> extras) {
+        if (eventFilter != null) {
+            eventFilter.stripAttributes(extras);
+        }
+
+        // the sequence number travels with the event, the extras may be null or shared
+        EventJournal journal = eventJournal;
+        long seq = journal != null ? journal.append(eventName, extras) : 0;
+
+        enqueueEvent(eventName, extras, seq);
+    }
+
+    private void enqueueEvent(String eventName, HashMap<String, Object> extras, long seq) {
+        // read once, an opt-out on another thread may null the batcher meanwhile
+        EventBatcher batcher = eventBatcher;
+        NameMatcher priority = priorityEvents;
+
+        if (priority != null && priority.matches(eventName)) {
+            priorityQueue.offer(eventName, extras, seq);
+        } else if (batcher != null) {
+            batcher.add(eventName, extras, seq);
+        } else {
+            forwardingQueue.offer(eventName, extras, seq);
+        }
+    }
+
+    private void onEventDropped(long seq) {
+        metrics.increment(KitMetrics.EVENTS_DROPPED_BACKPRESSURE);
+
+        // the event will not reach the SDK, it must not hold its journal segment either
+        EventJournal journal = eventJournal;
+        if (journal != null) {
+            journal.markDelivered(seq);
+        }
+    }
+
+    private void dispatchEvent(String eventName, HashMap<String, Object> extras, long seq, boolean canBatch) {
+        // the slice being forwarded when the user opted out stops here
+        if (runState == STATE_OPTED_OUT) return;
+
+        EventBatcher.Sink standIn = sdkStandIn;
+        if (standIn != null) {
+            standIn.track(eventName, extras);
+        } else {
+            handles.blueshift().trackEvent(eventName, extras, canBatch);
+        }
+
+        EventJournal journal = eventJournal;
+        if (journal != null) {
+            journal.markDelivered(seq);
+        }
+    }
+
+    // ** KitIntegration.EventListener **
+
+    @Override
+    public List<ReportingMessage> setOptOut(boolean optedOut) {
+        synchronized (lifecycleLock) {
+            if (optedOut) {
+                if (runState == STATE_RUNNING && kitWorker != null) {
+                    stopRuntime();
                 }
-                builder.append("\"").append(key).append("\" : \"").append(settings.get(key)).append("\"");
+                runState = STATE_OPTED_OUT;
+            } else if (runState == STATE_OPTED_OUT) {
+                // started again by the first call that needs it
+                runState = kitWorker != null && kitWorker.isShutdown() ? STATE_STOPPED : STATE_RUNNING;
             }
-            builder.append("\n}");
+        }
+
+        return Collections.singletonList(
+                new ReportingMessage(this, ReportingMessage.MessageType.OPT_OUT, System.currentTimeMillis(), null)
+                        .setOptOut(optedOut)
+        );
+    }
+
+    /**
+     * @return false while the user is opted out. The first call after opting back in
+     * restarts the kit.
+     */
+    private boolean isActive() {
+        int state = runState;
+        if (state == STATE_RUNNING) return true;
+        if (state == STATE_OPTED_OUT) return false;
+
+        restartRuntime();
+        return runState == STATE_RUNNING;
+    }
+
+    /**
+     * Stops every executor of the kit and forgets the work they had queued: events, identify
+     * calls, user info writes, link and image prefetches, and the event journal. The task
+     * running at that moment completes. Called with the lifecycle lock held.
+     */
+    private void stopRuntime() {
+        final KitExecutor worker = kitWorker;
+        int discarded = worker.shutdownNow(new Runnable() {
+            @Override
+            public void run() {
+                // last task on the worker, nothing else touches the journal meanwhile
+                EventJournal journal = eventJournal;
+                eventJournal = null;
+                if (journal != null) {
+                    journal.discard();
+                }
+            }
+        });
+
+        if (pushImagePool != null) {
+            discarded += pushImagePool.shutdownNow().size();
+        }
+
+        discarded += initGate.clear();
+
+        if (diagnostics != null) {
+            diagnostics.clear();
+        }
+
+        // the buffered events go with the components that hold them
+        eventBatcher = null;
+        impressionAggregator = null;
+        inAppPrefetcher = null;
+        pushPreprocessor = null;
+        pushImagePool = null;
+
+        metrics.add(KitMetrics.OPT_OUT_DISCARDED, discarded);
+        BlueshiftLogger.d(TAG, "Opted out, discarded " + discarded + " pending tasks");
+    }
+
+    /**
+     * Builds the executors and queues again with the settings in effect. The new worker first
+     * waits for the old one to run its last task, so the two never touch the journal at once.
+     */
+    private void restartRuntime() {
+        synchronized (lifecycleLock) {
+            if (runState != STATE_STOPPED) return;
+
+            final KitExecutor previous = kitWorker;
+            final KitSettings settings = kitSettings;
+            final Context context = handles.getContext();
+
+            startRuntime(settings, context);
+
+            kitWorker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        previous.awaitIdle(RESTART_WAIT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            if (initStarted.get()) {
+                userInfoWriter = new UserInfoWriter(handles, kitWorker.priorityLane());
+                // the identify calls discarded by the opt-out were never sent
+                identityFingerprint = loadIdentityFingerprint();
+
+                if (settings.isEventJournalEnabled()) {
+                    kitWorker.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            openEventJournal(context, settings.getEventJournalMaxBytes());
+                        }
+                    });
+                }
+            } else {
+                final long startNanos = System.nanoTime();
+                kitWorker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            initializeBlueshift(settings, context, startNanos);
+                        } catch (Exception e) {
+                            openGateAfterFailedInit(e);
+                        }
+                    }
+                });
+            }
+
+            runState = STATE_RUNNING;
+            BlueshiftLogger.d(TAG, "Opted in, kit restarted");
+        }
+    }
+
+    @Override
+    public List<ReportingMessage> leaveBreadcrumb(String breadcrumb) {
+        DiagnosticForwarder forwarder = diagnostics;
+        if (forwarder == null || !isActive() || !consentAllows(ConsentGate.EVENTS)) return null;
+
+        // kept for the next error, not sent on its own
+        forwarder.leaveBreadcrumb(breadcrumb);
 
-            BlueshiftLogger.i(TAG, builder.toString());
-        } catch (Exception e) {
-            BlueshiftLogger.e(TAG, e);
-        }
+        return Collections.singletonList(
+                new ReportingMessage(this, ReportingMessage.MessageType.BREADCRUMB, System.currentTimeMillis(), null)
+        );
     }
 
     @Override
-    protected List<ReportingMessage> onKitCreate(Map<String, String> settings, Context context) {
-        if (blueshiftConfiguration == null) {
-            BlueshiftLogger.d(TAG, "Blueshift configuration is not provided. Using the default one.");
-            blueshiftConfiguration = new Configuration();
-        }
+    public List<ReportingMessage> logError(String message, Map<String, String> map) {
+        DiagnosticForwarder forwarder = diagnostics;
+        if (forwarder == null || !isActive() || !consentAllows(ConsentGate.EVENTS)) return null;
 
-        String apiKey = settings.get(BLUESHIFT_EVENT_API_KEY);
-        if (KitUtils.isEmpty(apiKey)) {
-            throw new IllegalArgumentException("Blueshift requires a valid API key");
-        } else {
-            blueshiftConfiguration.setApiKey(apiKey);
-        }
+        // checked before the error takes a token from the budget
+        if (!passesEventFilter(DiagnosticForwarder.EVENT_ERROR)) return null;
 
-        shouldLogMPEvents = getBooleanSettings(settings, BLUESHIFT_SHOULD_LOG_MP_EVENTS, false);
-        shouldLogUserEvents = getBooleanSettings(settings, BLUESHIFT_SHOULD_LOG_USER_EVENTS, true);
-        shouldLogCommerceEvents = getBooleanSettings(settings, BLUESHIFT_SHOULD_LOG_COMMERCE_EVENTS, false);
-        shouldLogScreenViewEvents = getBooleanSettings(settings, BLUESHIFT_SHOULD_LOG_SCREEN_VIEW_EVENTS, false);
+        if (!forwarder.logError(message, map)) return null;
 
-        logTrackingConfig("MP", shouldLogMPEvents, BLUESHIFT_SHOULD_LOG_MP_EVENTS);
-        logTrackingConfig("Commerce", shouldLogCommerceEvents, BLUESHIFT_SHOULD_LOG_COMMERCE_EVENTS);
-        logTrackingConfig("Identify", shouldLogUserEvents, BLUESHIFT_SHOULD_LOG_USER_EVENTS);
-        logTrackingConfig("ScreenView", shouldLogScreenViewEvents, BLUESHIFT_SHOULD_LOG_SCREEN_VIEW_EVENTS);
+        return Collections.singletonList(
+                new ReportingMessage(this, ReportingMessage.MessageType.ERROR, System.currentTimeMillis(), map)
+        );
+    }
 
-        logSettings(settings);
+    @Override
+    public List<ReportingMessage> logException(Exception exception, Map<String, String> map, String message) {
+        DiagnosticForwarder forwarder = diagnostics;
+        if (forwarder == null || !isActive() || !consentAllows(ConsentGate.EVENTS)) return null;
 
-        // set app-icon as notification icon if not set
-        if (blueshiftConfiguration.getAppIcon() == 0) {
-            try {
-                ApplicationInfo applicationInfo = getContext().getApplicationInfo();
-                blueshiftConfiguration.setAppIcon(applicationInfo.icon);
-            } catch (Exception e) {
-                throw new IllegalArgumentException("Blueshift requires a valid app icon resource id");
-            }
-        }
+        // checked before the exception takes a token from the budget
+        String eventName = exception != null ? DiagnosticForwarder.EVENT_EXCEPTION : DiagnosticForwarder.EVENT_ERROR;
+        if (!passesEventFilter(eventName)) return null;
 
-        Blueshift.getInstance(context).initialize(blueshiftConfiguration);
+        if (!forwarder.logException(exception, map, message)) return null;
 
-        return null;
+        return Collections.singletonList(
+                new ReportingMessage(this, ReportingMessage.MessageType.ERROR, System.currentTimeMillis(), map)
+        );
     }
 
     @Override
-    public String getName() {
-        return "Blueshift";
-    }
+    public List<ReportingMessage> logScreen(final String screenName, final Map<String, String> map) {
+        if (!isActive() || !consentAllows(ConsentGate.EVENTS)) return null;
 
-    // ** event logging support methods **
+        long startNanos = metrics.startTimer();
 
-    private HashMap<String, Object> getExtras(Map<String, String> extras) {
-        HashMap<String, Object> newExtras = new HashMap<>();
+        if (shouldLogScreenViewEvents && passesEventFilter(screenName)) {
+            metrics.increment(KitMetrics.EVENTS_FORWARDED_SCREEN);
 
-        if (extras != null) {
-            for (Map.Entry<String, String> entry : extras.entrySet()) {
-                newExtras.put(entry.getKey(), entry.getValue());
+            if (initGate.isOpen()) {
+                trackScreenView(screenName, map);
+            } else {
+                runWhenInitialized(new Runnable() {
+                    @Override
+                    public void run() {
+                        trackScreenView(screenName, map);
+                    }
+                });
             }
+        } else {
+            metrics.increment(KitMetrics.EVENTS_DROPPED_SCREEN);
         }
 
-        return newExtras;
+        metrics.recordLatency(KitMetrics.LATENCY_LOG_SCREEN, startNanos);
+
+        return Collections.singletonList(
+                new ReportingMessage(this, ReportingMessage.MessageType.SCREEN_VIEW, System.currentTimeMillis(), map)
+        );
     }
 
-    // ** KitIntegration.EventListener **
+    private void trackScreenView(String screenName, Map<String, String> map) {
+        HashMap<String, Object> extras = EventExtras.from(map, 1);
+        extras.put(BlueshiftConstants.KEY_SCREEN_VIEWED, screenName);
 
-    @Override
-    public List<ReportingMessage> setOptOut(boolean optedOut) {
-        return null;
+        forwardEvent(BlueshiftConstants.EVENT_PAGE_LOAD, extras);
     }
 
+    @Nullable
     @Override
-    public List<ReportingMessage> leaveBreadcrumb(String s) {
-        return null;
-    }
+    public List<ReportingMessage> logEvent(@NonNull final MPEvent event) {
+        if (!isActive() || !consentAllows(ConsentGate.EVENTS)) return null;
 
-    @Override
-    public List<ReportingMessage> logError(String s, Map<String, String> map) {
-        return null;
-    }
+        long startNanos = metrics.startTimer();
 
-    @Override
-    public List<ReportingMessage> logException(Exception e, Map<String, String> map, String s) {
-        return null;
-    }
+        if (shouldLogMPEvents && passesEventFilter(event.getEventName())) {
+            metrics.increment(KitMetrics.EVENTS_FORWARDED_MP);
 
-    @Override
-    public List<ReportingMessage> logScreen(String screenName, Map<String, String> map) {
-        if (shouldLogScreenViewEvents) {
-            HashMap<String, Object> extras = getExtras(map);
-            extras.put(BlueshiftConstants.KEY_SCREEN_VIEWED, screenName);
-
-            Blueshift.getInstance(getContext()).trackEvent(
-                    BlueshiftConstants.EVENT_PAGE_LOAD,
-                    extras,
-                    false
-            );
+            if (initGate.isOpen()) {
+                trackMPEvent(event);
+            } else {
+                runWhenInitialized(new Runnable() {
+                    @Override
+                    public void run() {
+                        trackMPEvent(event);
+                    }
+                });
+            }
+        } else {
+            metrics.increment(KitMetrics.EVENTS_DROPPED_MP);
         }
 
-        List<ReportingMessage> messages = new LinkedList<>();
-        messages.add(new ReportingMessage(this, ReportingMessage.MessageType.SCREEN_VIEW, System.currentTimeMillis(), map));
-        return messages;
+        metrics.recordLatency(KitMetrics.LATENCY_LOG_EVENT, startNanos);
+
+        return Collections.singletonList(ReportingMessage.fromEvent(this, event));
     }
 
-    @Nullable
-    @Override
-    public List<ReportingMessage> logEvent(@NonNull MPEvent event) {
-        if (shouldLogMPEvents) {
-            HashMap<String, Object> extras = getExtras(event.getCustomAttributes());
-
-            Blueshift.getInstance(getContext()).trackEvent(
-                    event.getEventName(),
-                    extras,
-                    false
-            );
-        }
+    private void trackMPEvent(MPEvent event) {
+        HashMap<String, Object> extras = EventExtras.from(event.getCustomAttributes());
 
-        List<ReportingMessage> messages = new LinkedList<>();
-        messages.add(ReportingMessage.fromEvent(this, event));
-        return messages;
+        forwardEvent(event.getEventName(), extras);
     }
 
     // ** KitIntegration.CommerceListener **
@@ -267,132 +1143,415 @@ public class BlueshiftKit extends KitIntegration implements
     }
 
     @Override
-    public List<ReportingMessage> logEvent(CommerceEvent commerceEvent) {
-        if (shouldLogCommerceEvents) {
-            HashMap<String, Object> extras = getExtras(commerceEvent.getCustomAttributes());
-
-            String productAction = commerceEvent.getProductAction();
-            if (productAction != null) {
-                Blueshift.getInstance(getContext()).trackEvent(
-                        productAction,
-                        extras,
-                        false
-                );
+    public List<ReportingMessage> logEvent(final CommerceEvent commerceEvent) {
+        if (!isActive() || !consentAllows(ConsentGate.EVENTS)) return null;
+
+        long startNanos = metrics.startTimer();
+
+        boolean forwarded = false;
+
+        if (shouldLogCommerceEvents && commerceEvent.getProductAction() != null
+                && passesEventFilter(commerceEvent.getProductAction())) {
+            forwarded = true;
+
+            if (initGate.isOpen()) {
+                trackCommerceEvent(commerceEvent);
+            } else {
+                runWhenInitialized(new Runnable() {
+                    @Override
+                    public void run() {
+                        trackCommerceEvent(commerceEvent);
+                    }
+                });
             }
         }
 
-        List<ReportingMessage> messages = new LinkedList<>();
-        messages.add(ReportingMessage.fromEvent(this, commerceEvent));
-        return messages;
+        ImpressionAggregator aggregator = impressionAggregator;
+        if (aggregator != null && aggregator.add(commerceEvent)) {
+            forwarded = true;
+        }
+
+        metrics.increment(forwarded ? KitMetrics.EVENTS_FORWARDED_COMMERCE : KitMetrics.EVENTS_DROPPED_COMMERCE);
+
+        metrics.recordLatency(KitMetrics.LATENCY_LOG_COMMERCE_EVENT, startNanos);
+
+        return Collections.singletonList(ReportingMessage.fromEvent(this, commerceEvent));
+    }
+
+    private void trackCommerceEvent(CommerceEvent commerceEvent) {
+        String eventName = CommerceExpander.eventNameFor(commerceEvent.getProductAction(), mapProductViews);
+        if (eventName != null) {
+            forwardEvent(eventName, commerceExpander.buildParams(commerceEvent));
+        }
+    }
+
+    /**
+     * Forwards an event the kit put together itself, e.g. an impression summary. Diagnostics
+     * are checked before they take from their budget and skip straight to
+     * {@link #forwardWhenInitialized(String, HashMap)}.
+     */
+    private void trackKitEvent(final String eventName, final HashMap<String, Object> params) {
+        // the consent may have been withdrawn since the event was collected
+        if (!consentAllows(ConsentGate.EVENTS) || !passesEventFilter(eventName)) return;
+
+        forwardWhenInitialized(eventName, params);
+    }
+
+    private void forwardWhenInitialized(final String eventName, final HashMap<String, Object> params) {
+        if (initGate.isOpen()) {
+            forwardEvent(eventName, params);
+        } else {
+            runWhenInitialized(new Runnable() {
+                @Override
+                public void run() {
+                    forwardEvent(eventName, params);
+                }
+            });
+        }
     }
 
     // ** KitIntegration.UserAttributeListener **
 
+    // attribute changes are only collected while identify calls are enabled and consented,
+    // they have no other way to reach Blueshift. They are recorded after the identities of the
+    // user they came with, so a login does not forget the first attributes of the new user.
+
+    private boolean collectsUserAttributes() {
+        return isActive() && shouldLogUserEvents && (consentMask & ConsentGate.IDENTIFY) != 0;
+    }
+
+    /**
+     * @return the change recording the attribute value, or null if attributes are not collected
+     */
+    private Runnable setAttribute(final String key, final Object value) {
+        if (!collectsUserAttributes()) return null;
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                userAttributes.set(key, value);
+            }
+        };
+    }
+
     @Override
-    public void onIncrementUserAttribute(String s, int i, String s1, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+    public void onIncrementUserAttribute(String key, int incrementedBy, String value, FilteredMParticleUser filteredMParticleUser) {
+        updateBlueshiftUserInfo(filteredMParticleUser, null, setAttribute(key, value));
     }
 
     @Override
     public void onRemoveUserAttribute(String key, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+        updateBlueshiftUserInfo(filteredMParticleUser, null, setAttribute(key, UserAttributeDelta.REMOVED));
     }
 
     @Override
     public void onSetUserAttribute(String key, Object value, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+        updateBlueshiftUserInfo(filteredMParticleUser, null, setAttribute(key, value));
     }
 
     @Override
-    public void onSetUserTag(String s, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+    public void onSetUserTag(String key, FilteredMParticleUser filteredMParticleUser) {
+        updateBlueshiftUserInfo(filteredMParticleUser, null, setAttribute(key, true));
     }
 
     @Override
-    public void onSetUserAttributeList(String s, List<String> list, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+    public void onSetUserAttributeList(String key, List<String> values, FilteredMParticleUser filteredMParticleUser) {
+        // the change may run later, the caller may keep changing its list until then
+        List<String> copy = values != null ? new ArrayList<>(values) : null;
+        updateBlueshiftUserInfo(filteredMParticleUser, null, setAttribute(key, copy));
     }
 
     @Override
-    public void onSetAllUserAttributes(Map<String, String> map, Map<String, List<String>> map1, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+    public void onSetAllUserAttributes(Map<String, String> attributes, Map<String, List<String>> attributeLists, FilteredMParticleUser filteredMParticleUser) {
+        Runnable change = null;
+        if (collectsUserAttributes()) {
+            final Map<String, String> attributesCopy = attributes != null ? new HashMap<>(attributes) : null;
+            final Map<String, List<String>> listsCopy = attributeLists != null ? new HashMap<>(attributeLists) : null;
+            change = new Runnable() {
+                @Override
+                public void run() {
+                    userAttributes.setAll(attributesCopy, listsCopy);
+                }
+            };
+        }
+
+        updateBlueshiftUserInfo(filteredMParticleUser, null, change);
     }
 
     @Override
     public boolean supportsAttributeLists() {
-        return false;
+        return true;
     }
 
     @Override
-    public void onConsentStateUpdated(ConsentState consentState, ConsentState consentState1, FilteredMParticleUser filteredMParticleUser) {
-        updateBlueshiftUserInfo(filteredMParticleUser);
+    public void onConsentStateUpdated(ConsentState oldState, ConsentState newState, FilteredMParticleUser filteredMParticleUser) {
+        // the gate changes first, so nothing is forwarded under the old consent from now on
+        updateConsent(newState);
+        updateBlueshiftUserInfo(filteredMParticleUser, newState, null);
     }
 
     /**
      * This method is invoked each time when {@link UserAttributeListener} callback methods are invoked.
      *
-     * This method is responsible for firing an identify call to Blueshift directly after updating
-     * details inside {@link UserInfo} object.
+     * This method is responsible for firing an identify call to Blueshift after updating
+     * details inside {@link UserInfo} object. Nothing is written or sent when the identities
+     * and consent state are the same as in the last identify call and no attribute changed.
      *
      * @param filteredMParticleUser user object sent by mParticle
+     * @param consentState          new consent state, or null if it did not change
+     * @param attributeChange       records the changed user attribute, or null
      */
-    private void updateBlueshiftUserInfo(FilteredMParticleUser filteredMParticleUser) {
-        if (filteredMParticleUser != null) {
-            UserInfo userInfo = UserInfo.getInstance(getContext());
+    private void updateBlueshiftUserInfo(final FilteredMParticleUser filteredMParticleUser, final ConsentState consentState,
+                                         final Runnable attributeChange) {
+        if (!isActive() || !consentAllows(ConsentGate.IDENTIFY)) return;
+
+        long startNanos = metrics.startTimer();
 
-            // identity
-            Map<MParticle.IdentityType, String> identities = filteredMParticleUser.getUserIdentities();
+        if (filteredMParticleUser != null) {
+            if (initGate.isOpen()) {
+                applyUserIdentities(filteredMParticleUser.getUserIdentities(), consentState, attributeChange);
+            } else {
+                runIdentityWhenInitialized(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyUserIdentities(filteredMParticleUser.getUserIdentities(), consentState, attributeChange);
+                    }
+                });
+            }
+        } else if (attributeChange != null) {
+            // no identities to compare, the change goes with the next identify
+            attributeChange.run();
+        }
 
-            String customerId = identities.get(MParticle.IdentityType.CustomerId);
-            userInfo.setRetailerCustomerId(customerId);
+        metrics.recordLatency(KitMetrics.LATENCY_USER_ATTRIBUTE, startNanos);
+    }
 
-            String email = identities.get(MParticle.IdentityType.Email);
-            userInfo.setEmail(email);
+    // ** KitIntegration.PushListener **
 
-            userInfo.save(getContext());
+    private boolean isBlueshiftPush(Intent intent) {
+        // hasExtra looks the key up in place, getExtras() would copy the whole bundle first
+        return intent != null && intent.hasExtra(BSFT_MESSAGE_UUID);
+    }
 
-            invokeBlueshiftIdentify();
+    /**
+     * Returns the push enabled flag from the configuration this instance initialized the SDK
+     * with, or from the SDK if the kit was not created.
+     */
+    private boolean isPushEnabled() {
+        Configuration config = blueshiftConfiguration;
+        if (config == null) {
+            config = BlueshiftUtils.getConfiguration(getContext());
         }
+
+        return config == null || config.isPushEnabled();
     }
 
-    // ** KitIntegration.PushListener **
+    @Override
+    public KitIntegration setConfiguration(KitConfiguration configuration) {
+        if (handles != null) {
+            handles.invalidateAll();
+        }
 
-    private boolean isBlueshiftPush(Intent intent) {
-        Bundle bundle = intent != null ? intent.getExtras() : null;
-        Set<String> keys = bundle != null ? bundle.keySet() : null;
-        return keys != null && keys.contains(BSFT_MESSAGE_UUID);
+        // mParticle delivers the settings again when they change on the dashboard
+        if (kitWorker != null && configuration != null) {
+            KitSettings settings = new KitSettings(configuration.getSettings());
+            if (!settings.equals(kitSettings)) {
+                applySettings(settings);
+                logSettings(settings);
+            }
+        }
+
+        return super.setConfiguration(configuration);
     }
 
     @Override
     public boolean willHandlePushMessage(Intent intent) {
-        Configuration config = BlueshiftUtils.getConfiguration(getContext());
-        if (config != null && !config.isPushEnabled()) {
+        long startNanos = metrics.startTimer();
+
+        boolean isBlueshiftPush = isBlueshiftPush(intent);
+        if (isBlueshiftPush && !isPushEnabled()) {
             BlueshiftLogger.w(TAG, "Blueshift push handling is disabled. Skipping...");
-            return false;
+            metrics.increment(KitMetrics.PUSH_DISABLED);
+            isBlueshiftPush = false;
+        } else if (isBlueshiftPush && (!isActive() || !consentAllows(ConsentGate.PUSH))) {
+            isBlueshiftPush = false;
         }
 
-        boolean isBlueshiftPush = isBlueshiftPush(intent);
-        if (!isBlueshiftPush) {
-            BlueshiftLogger.d(TAG, "Push message from outside Blueshift detected. Skipping...");
+        if (isBlueshiftPush) {
+            metrics.increment(KitMetrics.PUSH_BLUESHIFT);
+        } else {
+            metrics.increment(KitMetrics.PUSH_OTHER);
         }
 
+        metrics.recordLatency(KitMetrics.LATENCY_PUSH_DECISION, startNanos);
+
         return isBlueshiftPush;
     }
 
+    /**
+     * Runs on the FCM receive thread. Everything the notification needs is done before this
+     * returns, because the process may be stopped soon after; the time it takes is recorded
+     * as {@code latency.push_receive}.
+     */
     @Override
     public void onPushMessageReceived(Context context, Intent intent) {
+        // an opt-out may land between willHandlePushMessage and this call
+        if (!isActive()) return;
+
+        long startNanos = metrics.startTimer();
+
+        // read once, an opt-out on another thread may null them meanwhile
+        PushPreprocessor preprocessor = pushPreprocessor;
+        boolean prefetchLinks = prefetchPushLinks;
+
+        // the init wait and the image prefetch share one budget, the receive thread is never
+        // held longer than the larger of the two
+        long budgetMillis = preprocessor != null
+                ? Math.max(PUSH_INIT_WAIT_MS, preprocessor.getBudgetMillis()) : PUSH_INIT_WAIT_MS;
+        long deadline = System.currentTimeMillis() + budgetMillis;
+
+        // a push can start the process while the SDK is still initializing on the kit worker
+        if (!initGate.isOpen()) {
+            try {
+                if (!initGate.awaitOpen(PUSH_INIT_WAIT_MS)) {
+                    BlueshiftLogger.w(TAG, "Blueshift SDK is not initialized yet, handling the push anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // the payload is read once for the image and link prefetching
+        Map<String, String> payload = null;
+        if ((preprocessor != null || prefetchLinks) && isBlueshiftPush(intent)) {
+            payload = getStringExtras(intent);
+        }
+
+        if (preprocessor != null && payload != null) {
+            // the images get what the init wait left of the budget
+            preprocessPush(preprocessor, payload, deadline - System.currentTimeMillis());
+        }
+
         BlueshiftMessagingService.handlePushMessage(context, intent);
+
+        if (prefetchLinks && payload != null) {
+            prefetchLinks(payload);
+        }
+
+        metrics.recordLatency(KitMetrics.LATENCY_PUSH_RECEIVE, startNanos);
+    }
+
+    private static Map<String, String> getStringExtras(Intent intent) {
+        Map<String, String> strings = new HashMap<>();
+
+        Bundle extras = intent.getExtras();
+        if (extras != null) {
+            for (String key : extras.keySet()) {
+                Object value = extras.get(key);
+                if (value instanceof String) {
+                    strings.put(key, (String) value);
+                }
+            }
+        }
+
+        return strings;
+    }
+
+    /**
+     * Warms the image caches for the payload images, waiting at most {@code maxWaitMillis}.
+     * The payload is left as it is, the SDK loads the images itself.
+     */
+    private void preprocessPush(PushPreprocessor preprocessor, Map<String, String> payload, long maxWaitMillis) {
+        long startNanos = metrics.startTimer();
+
+        preprocessor.process(payload, maxWaitMillis);
+
+        metrics.recordLatency(KitMetrics.LATENCY_PUSH_PREPROCESS, startNanos);
+    }
+
+    private static ExecutorService newPushImagePool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                PUSH_IMAGE_THREADS, PUSH_IMAGE_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "BlueshiftKit-PushImages");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Caches the destinations the Blueshift links of the push payload carry, so they open
+     * without the redirect round trip if the user taps them. The links are parsed, never
+     * requested: a request to a tracking link would count as a click.
+     */
+    private static void prefetchLinks(Map<String, String> payload) {
+        List<String> links = new ArrayList<>();
+        for (String value : payload.values()) {
+            DeepLinkCache.findLinks(value, links);
+        }
+
+        for (String link : links) {
+            if (BlueshiftLinksHandler.isBlueshiftLink(Uri.parse(link))) {
+                linkCache.prefetch(link);
+            }
+        }
     }
 
     @Override
-    public boolean onPushRegistration(String instanceId, String senderId) {
+    public boolean onPushRegistration(final String instanceId, String senderId) {
+        if (!isActive() || !consentAllows(ConsentGate.IDENTIFY)) return false;
+
         // fire an identify event on push token refresh
-        invokeBlueshiftIdentify();
+        if (initGate.isOpen()) {
+            applyPushToken(instanceId);
+        } else {
+            runIdentityWhenInitialized(new Runnable() {
+                @Override
+                public void run() {
+                    applyPushToken(instanceId);
+                }
+            });
+        }
 
         // Blueshift depends on mP to do the push registration
         return false;
     }
 
+    // ** KitIntegration.ApplicationStateListener **
+
+    @Override
+    public void onApplicationForeground() {
+        if (runState != STATE_RUNNING) return;
+
+        // a new visit gets a new in-app fetch budget
+        InAppPrefetcher prefetcher = inAppPrefetcher;
+        if (prefetcher != null) {
+            prefetcher.startSession();
+        }
+    }
+
+    @Override
+    public void onApplicationBackground() {
+        if (runState != STATE_RUNNING) return;
+
+        // hand over the buffered events before the process becomes a candidate for killing
+        ImpressionAggregator aggregator = impressionAggregator;
+        if (aggregator != null) {
+            aggregator.flush();
+        }
+
+        EventBatcher batcher = eventBatcher;
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
     // ** KitIntegration.IdentityListener **
 
     @Override
@@ -407,6 +1566,11 @@ public class BlueshiftKit extends KitIntegration implements
 
     @Override
     public void onLogoutCompleted(MParticleUser mParticleUser, FilteredIdentityApiRequest filteredIdentityApiRequest) {
+        // the SDK may have reset the stored user and device id
+        if (handles != null) {
+            handles.invalidateUser();
+        }
+
         updateUser(mParticleUser);
     }
 
@@ -423,45 +1587,214 @@ public class BlueshiftKit extends KitIntegration implements
     /**
      * This method is invoked each time when {@link IdentityListener} callback methods are invoked.
      *
-     * This method is responsible for firing an identify call to Blueshift directly after updating
-     * details inside {@link UserInfo} object.
+     * This method is responsible for firing an identify call to Blueshift after updating
+     * details inside {@link UserInfo} object. Nothing is written or sent when the identities
+     * are the same as in the last identify call.
      *
      * @param user user object sent by mParticle
      */
-    private void updateUser(MParticleUser user) {
+    private void updateUser(final MParticleUser user) {
+        // a different user comes with their own consent
+        if (user != null && user.getConsentState() != null) {
+            updateConsent(user.getConsentState());
+        }
+
+        if (!isActive() || !consentAllows(ConsentGate.IDENTIFY)) return;
+
+        long startNanos = metrics.startTimer();
+
         if (user != null) {
-            UserInfo userInfo = UserInfo.getInstance(getContext());
+            if (initGate.isOpen()) {
+                applyUserIdentities(user.getUserIdentities(), null, null);
+            } else {
+                runIdentityWhenInitialized(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyUserIdentities(user.getUserIdentities(), null, null);
+                    }
+                });
+            }
+        }
+
+        metrics.recordLatency(KitMetrics.LATENCY_IDENTITY, startNanos);
+    }
+
+    private void applyUserIdentities(Map<MParticle.IdentityType, String> identities, ConsentState consentState,
+                                     Runnable attributeChange) {
+        IdentityFingerprint fingerprint = identityFingerprint;
+
+        boolean identitiesChanged = fingerprint.setIdentities(identities);
+        boolean changed = identitiesChanged;
+        if (consentState != null) {
+            changed |= fingerprint.setConsent(consentState);
+        }
+
+        if (changed) {
+            userInfoWriter.update(identities);
+        }
 
-            String email = user.getUserIdentities().get(MParticle.IdentityType.Email);
-            userInfo.setEmail(email);
+        if (identitiesChanged) {
+            // a different user, neither the collected nor the shipped attributes are theirs
+            userAttributes.reset();
+        }
+
+        if (attributeChange != null) {
+            attributeChange.run();
+        }
+
+        if (!changed && !userAttributes.hasChanges()) {
+            metrics.increment(KitMetrics.IDENTIFY_UNCHANGED);
+            return;
+        }
 
-            String customerId = user.getUserIdentities().get(MParticle.IdentityType.CustomerId);
-            userInfo.setRetailerCustomerId(customerId);
+        invokeBlueshiftIdentify();
+    }
 
-            userInfo.save(getContext());
+    private void applyPushToken(String pushToken) {
+        IdentityFingerprint fingerprint = identityFingerprint;
 
-            invokeBlueshiftIdentify();
+        if (!fingerprint.setPushToken(pushToken)) {
+            metrics.increment(KitMetrics.IDENTIFY_UNCHANGED);
+            return;
         }
+
+        invokeBlueshiftIdentify();
+    }
+
+    /**
+     * @return the fingerprint of the last identify call sent, as stored in the kit preferences
+     */
+    private IdentityFingerprint loadIdentityFingerprint() {
+        SharedPreferences preferences = getKitPreferences();
+
+        return new IdentityFingerprint(
+                preferences.getLong(PREF_KEY_IDENTITIES_HASH, IdentityFingerprint.UNKNOWN),
+                preferences.getLong(PREF_KEY_PUSH_TOKEN_HASH, IdentityFingerprint.UNKNOWN),
+                preferences.getLong(PREF_KEY_CONSENT_HASH, IdentityFingerprint.UNKNOWN)
+        );
+    }
+
+    /**
+     * Stores the fingerprint in the kit preferences once an identify call carrying it is sent,
+     * so the next app start does not identify an unchanged user again. A call that is
+     * coalesced away, dropped or lost to a kill leaves the previous fingerprint in place.
+     */
+    private void persistIdentityFingerprint() {
+        IdentityFingerprint fingerprint = identityFingerprint;
+        if (fingerprint == null) return;
+
+        getKitPreferences()
+                .edit()
+                .putLong(PREF_KEY_IDENTITIES_HASH, fingerprint.getIdentitiesHash())
+                .putLong(PREF_KEY_PUSH_TOKEN_HASH, fingerprint.getPushTokenHash())
+                .putLong(PREF_KEY_CONSENT_HASH, fingerprint.getConsentHash())
+                .apply();
     }
 
+    /**
+     * Requests an identify call. Requests made within the coalescing window are merged into
+     * a single identify call that carries the latest details from {@link UserInfo}.
+     */
     private void invokeBlueshiftIdentify() {
-        if (shouldLogUserEvents) {
-            BlueshiftExecutor.getInstance().runOnNetworkThread(
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            String deviceId = DeviceUtils.getDeviceId(getContext());
-                            Blueshift
-                                    .getInstance(getContext())
-                                    .identifyUserByDeviceId(deviceId, getKitIdentifyParams(), false);
-                        }
+        IdentifyScheduler scheduler = identifyScheduler;
+        if (shouldLogUserEvents && scheduler != null) {
+            metrics.increment(KitMetrics.IDENTIFY_REQUESTED);
+            scheduler.schedule();
+        }
+    }
+
+    private void fireBlueshiftIdentify() {
+        // the consent may have been withdrawn while the call was being coalesced
+        if (runState == STATE_RUNNING && shouldLogUserEvents && consentAllows(ConsentGate.IDENTIFY)) {
+            metrics.increment(KitMetrics.IDENTIFY_ISSUED);
+            // queued behind any pending UserInfo write, so the call carries the latest details,
+            // but ahead of queued analytics events
+            kitWorker.executePriority(new Runnable() {
+                @Override
+                public void run() {
+                    String deviceId = handles.deviceId();
+                    handles.blueshift().identifyUserByDeviceId(deviceId, getKitIdentifyParams(), false);
+                    persistIdentityFingerprint();
+
+                    // the SDK reports no completion for the identify, so the in-app fetch
+                    // waits a fixed delay for it to reach the server instead
+                    if (inAppPrefetcher != null) {
+                        kitWorker.schedule(inAppPrefetchTask, INAPP_PREFETCH_DELAY_MS);
                     }
-            );
+                }
+            });
+        }
+    }
+
+    /**
+     * @return number of identify calls requested by the kit callbacks
+     */
+    public long getIdentifyRequestCount() {
+        return identifyScheduler != null ? identifyScheduler.getRequestCount() : 0;
+    }
+
+    /**
+     * @return number of identify calls actually sent to Blueshift
+     */
+    public long getIdentifyCallCount() {
+        return identifyScheduler != null ? identifyScheduler.getIdentifyCount() : 0;
+    }
+
+    /**
+     * @return number of identify requests merged into another identify call
+     */
+    public long getCoalescedIdentifyCount() {
+        return identifyScheduler != null ? identifyScheduler.getCoalescedCount() : 0;
+    }
+
+    /**
+     * @return number of times the kit wrote {@link UserInfo} to disk
+     */
+    public long getUserInfoSaveCount() {
+        return userInfoWriter != null ? userInfoWriter.getSaveCount() : 0;
+    }
+
+    /**
+     * @return number of events dropped because the forwarding queue, or the one of the
+     * priority events, was full
+     */
+    public long getDroppedEventCount() {
+        long dropped = forwardingQueue != null ? forwardingQueue.getDroppedCount() : 0;
+        return dropped + (priorityQueue != null ? priorityQueue.getDroppedCount() : 0);
+    }
+
+    /**
+     * @return number of in-app message fetches the kit started on its own
+     */
+    public long getInAppPrefetchCount() {
+        InAppPrefetcher prefetcher = inAppPrefetcher;
+        return prefetcher != null ? prefetcher.getFetchCount() : 0;
+    }
+
+    /**
+     * Drops the cached Blueshift device id. Call this after resetting the device id in the
+     * Blueshift SDK, so the next identify call picks up the new one.
+     */
+    public void onDeviceIdReset() {
+        if (handles != null) {
+            handles.invalidateDeviceId();
         }
     }
 
+    /**
+     * @return number of times the kit resolved the device id through the Blueshift SDK
+     */
+    public long getDeviceIdLookupCount() {
+        return handles != null ? handles.getDeviceIdLookupCount() : 0;
+    }
+
+    /**
+     * @return identify params carrying the kit version and the user attributes changed since
+     * the previous identify call
+     */
     private HashMap<String, Object> getKitIdentifyParams() {
-        HashMap<String, Object> map = new HashMap<>();
+        HashMap<String, Object> map = new HashMap<>(EventExtras.capacityFor(userAttributes.size() + 1));
+        userAttributes.drainTo(map);
         map.put(BSFT_KIT_VERSION, BuildConfig.KIT_VERSION);
 
         return map;
@@ -0,0 +1,126 @@
+package com.mparticle.kits;
+
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.TransactionAttributes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expands an mParticle product action into a Blueshift event: the event is named after the
+ * product action, and every product in the event is sent in a {@code products} array along
+ * with the transaction totals.
+ */
+class CommerceExpander {
+
+    // Blueshift's product view event, sent for product details when blueshift_map_product_views is on
+    static final String EVENT_VIEW = "view";
+
+    // payload keys
+    static final String KEY_PRODUCTS = "products";
+    static final String KEY_PRODUCT_ID = "product_id";
+    static final String KEY_SKUS = "skus";
+    static final String KEY_ORDER_ID = "order_id";
+    static final String KEY_REVENUE = "revenue";
+    static final String KEY_TAX = "tax";
+    static final String KEY_SHIPPING_COST = "shipping_cost";
+    static final String KEY_COUPON = "coupon";
+    static final String KEY_AFFILIATION = "affiliation";
+    static final String KEY_CURRENCY = "currency";
+    static final String KEY_PRODUCT_LIST = "product_list";
+
+    private final ProductSerializer productSerializer;
+
+    CommerceExpander(ProductSerializer productSerializer) {
+        this.productSerializer = productSerializer;
+    }
+
+    /**
+     * The product action is forwarded as is, as it always has been, so existing Blueshift
+     * triggers and segments keep matching. Product details are renamed to {@link #EVENT_VIEW}
+     * only when the app asks for it; clicks are never renamed.
+     *
+     * @return Blueshift event name for the product action, or null when the event has no
+     * product action
+     */
+    static String eventNameFor(String productAction, boolean mapProductViews) {
+        if (mapProductViews && Product.DETAIL.equals(productAction)) {
+            return EVENT_VIEW;
+        }
+
+        return productAction;
+    }
+
+    /**
+     * Builds the Blueshift payload for a product action event. The event's custom attributes
+     * are kept at the top level; the product and transaction keys are added next to them.
+     */
+    HashMap<String, Object> buildParams(CommerceEvent commerceEvent) {
+        Map<String, String> attributes = commerceEvent.getCustomAttributes();
+        List<Product> products = commerceEvent.getProducts();
+
+        int attributeCount = attributes != null ? attributes.size() : 0;
+        int productCount = products != null ? products.size() : 0;
+
+        HashMap<String, Object> params = new HashMap<>(EventExtras.capacityFor(attributeCount + 10));
+        if (attributeCount > 0) {
+            params.putAll(attributes);
+        }
+
+        double productTotal = 0;
+        if (productCount > 0) {
+            List<Map<String, Object>> productMaps = new ArrayList<>(productCount);
+            List<String> skus = new ArrayList<>(productCount);
+
+            for (int i = 0; i < productCount; i++) {
+                Product product = products.get(i);
+                if (product == null) continue;
+
+                productMaps.add(productSerializer.serialize(product));
+                productTotal += product.getTotalAmount();
+
+                if (product.getSku() != null) {
+                    skus.add(product.getSku());
+                }
+            }
+
+            params.put(KEY_PRODUCTS, productMaps);
+            params.put(KEY_SKUS, skus);
+
+            // single product events (views, cart changes) are keyed by product id in Blueshift
+            if (skus.size() == 1) {
+                params.put(KEY_PRODUCT_ID, skus.get(0));
+            }
+        }
+
+        TransactionAttributes transaction = commerceEvent.getTransactionAttributes();
+        Double revenue = null;
+        if (transaction != null) {
+            putIfNotNull(params, KEY_ORDER_ID, transaction.getId());
+            putIfNotNull(params, KEY_TAX, transaction.getTax());
+            putIfNotNull(params, KEY_SHIPPING_COST, transaction.getShipping());
+            putIfNotNull(params, KEY_COUPON, transaction.getCouponCode());
+            putIfNotNull(params, KEY_AFFILIATION, transaction.getAffiliation());
+            revenue = transaction.getRevenue();
+        }
+
+        if (revenue == null && productCount > 0) {
+            revenue = productTotal;
+        }
+
+        putIfNotNull(params, KEY_REVENUE, revenue);
+        putIfNotNull(params, KEY_CURRENCY, commerceEvent.getCurrency());
+        putIfNotNull(params, KEY_PRODUCT_LIST, commerceEvent.getProductListName());
+
+        return params;
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.mparticle.kits;
+
+import com.mparticle.consent.CCPAConsent;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.consent.GDPRConsent;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a consent state into the set of channels the kit may forward, as a bitmask of
+ * {@link #EVENTS}, {@link #IDENTIFY} and {@link #PUSH}.
+ * <p>
+ * Each channel can require a comma separated list of GDPR purposes, all of which must be
+ * consented for the channel to stay open; a purpose missing from the consent state counts as
+ * not consented. When the CCPA consent is respected, a user who opted out of data sale has
+ * events and identify calls closed. Channels without requirements are always open.
+ * <p>
+ * The mask is compiled once per consent change, so the forwarding paths only test a bit.
+ */
+final class ConsentGate {
+
+    static final int EVENTS = 1;
+    static final int IDENTIFY = 1 << 1;
+    static final int PUSH = 1 << 2;
+    static final int ALL = EVENTS | IDENTIFY | PUSH;
+
+    private static final int[] CHANNELS = {EVENTS, IDENTIFY, PUSH};
+    private static final int CCPA_CHANNELS = EVENTS | IDENTIFY;
+
+    static final ConsentGate NONE = new ConsentGate(new String[CHANNELS.length][], false);
+
+    // required purposes, lower case, indexed like CHANNELS
+    private final String[][] purposes;
+    private final boolean respectCcpa;
+
+    private ConsentGate(String[][] purposes, boolean respectCcpa) {
+        this.purposes = purposes;
+        this.respectCcpa = respectCcpa;
+    }
+
+    static ConsentGate parse(String eventPurposes, String identifyPurposes, String pushPurposes, boolean respectCcpa) {
+        String[][] purposes = {
+                parsePurposes(eventPurposes),
+                parsePurposes(identifyPurposes),
+                parsePurposes(pushPurposes)
+        };
+
+        ConsentGate gate = new ConsentGate(purposes, respectCcpa);
+        return gate.isEmpty() ? NONE : gate;
+    }
+
+    private static String[] parsePurposes(String list) {
+        Set<String> purposes = new HashSet<>();
+
+        if (list != null) {
+            for (String purpose : list.split(",")) {
+                String trimmed = purpose.trim();
+                if (!trimmed.isEmpty()) {
+                    purposes.add(trimmed.toLowerCase(Locale.US));
+                }
+            }
+        }
+
+        return purposes.isEmpty() ? null : purposes.toArray(new String[purposes.size()]);
+    }
+
+    /**
+     * @return true if no channel has a requirement, every consent state opens all of them
+     */
+    boolean isEmpty() {
+        if (respectCcpa) return false;
+
+        for (String[] channelPurposes : purposes) {
+            if (channelPurposes != null) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param state the user's consent state, or null if it is not known
+     * @return the channels open under the given consent state
+     */
+    int compile(ConsentState state) {
+        if (isEmpty()) return ALL;
+
+        Set<String> consented = consentedPurposes(state);
+
+        int mask = 0;
+        for (int i = 0; i < CHANNELS.length; i++) {
+            if (allConsented(purposes[i], consented)) {
+                mask |= CHANNELS[i];
+            }
+        }
+
+        if (respectCcpa && state != null) {
+            CCPAConsent ccpa = state.getCCPAConsentState();
+            // for CCPA "consented" means the user opted out of the sale of their data
+            if (ccpa != null && ccpa.isConsented()) {
+                mask &= ~CCPA_CHANNELS;
+            }
+        }
+
+        return mask;
+    }
+
+    private static Set<String> consentedPurposes(ConsentState state) {
+        Set<String> consented = new HashSet<>();
+        if (state == null || state.getGDPRConsentState() == null) return consented;
+
+        for (Map.Entry<String, GDPRConsent> entry : state.getGDPRConsentState().entrySet()) {
+            GDPRConsent consent = entry.getValue();
+            if (entry.getKey() != null && consent != null && consent.isConsented()) {
+                consented.add(entry.getKey().toLowerCase(Locale.US));
+            }
+        }
+
+        return consented;
+    }
+
+    private static boolean allConsented(String[] required, Set<String> consented) {
+        if (required == null) return true;
+
+        for (String purpose : required) {
+            if (!consented.contains(purpose)) return false;
+        }
+
+        return true;
+    }
+}
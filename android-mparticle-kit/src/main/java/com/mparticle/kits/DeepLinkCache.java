@@ -0,0 +1,190 @@
+package com.mparticle.kits;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers where Blueshift links lead, so a tapped link can open its destination without
+ * waiting for the redirect round trip.
+ * <p>
+ * Resolved links are kept in a small LRU cache for {@code ttlMillis}. Tracking links that carry
+ * their destination in the {@code redir} query parameter are resolved on the spot, without
+ * any request; other links (e.g. shortened ones) are only learned when a tap goes through the
+ * SDK. The kit never requests a link itself: Blueshift's link endpoints record a click for
+ * every request. The time each resolution took is kept with the entry and recorded in
+ * {@link KitMetrics}.
+ */
+class DeepLinkCache {
+
+    static final String REDIRECT_PARAM = "redir";
+
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+    private static final long DEFAULT_TTL_MILLIS = 60 * 60 * 1000;
+
+    private static class ResolvedLink {
+        final String destination;
+        final long resolvedAtMillis;
+        final long resolveMillis;
+
+        ResolvedLink(String destination, long resolvedAtMillis, long resolveMillis) {
+            this.destination = destination;
+            this.resolvedAtMillis = resolvedAtMillis;
+            this.resolveMillis = resolveMillis;
+        }
+    }
+
+    private final LinkedHashMap<String, ResolvedLink> cache;
+    private final long ttlMillis;
+    private final KitMetrics metrics = KitMetrics.getInstance();
+
+    DeepLinkCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    DeepLinkCache(final int maxEntries, long ttlMillis) {
+        this.cache = new LinkedHashMap<String, ResolvedLink>(EventExtras.capacityFor(maxEntries), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResolvedLink> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the destination of the link, or null if it is not known yet
+     */
+    String get(String link) {
+        if (link == null) return null;
+
+        synchronized (this) {
+            ResolvedLink entry = cache.get(link);
+            if (entry != null) {
+                if (System.currentTimeMillis() - entry.resolvedAtMillis < ttlMillis) {
+                    metrics.increment(KitMetrics.LINK_CACHE_HIT);
+                    return entry.destination;
+                }
+
+                cache.remove(link);
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        String destination = redirectTarget(link);
+        if (destination != null) {
+            put(link, destination, startNanos);
+            metrics.increment(KitMetrics.LINK_CACHE_HIT);
+        } else {
+            metrics.increment(KitMetrics.LINK_CACHE_MISS);
+        }
+
+        return destination;
+    }
+
+    /**
+     * Stores the destination of a link resolved elsewhere, e.g. by the SDK.
+     *
+     * @param startNanos {@link System#nanoTime()} when the resolution started
+     */
+    void put(String link, String destination, long startNanos) {
+        if (link == null || destination == null) return;
+
+        long resolveMillis = (System.nanoTime() - startNanos) / 1000000L;
+        metrics.recordLatency(KitMetrics.LATENCY_LINK_RESOLVE, startNanos);
+
+        synchronized (this) {
+            cache.put(link, new ResolvedLink(destination, System.currentTimeMillis(), resolveMillis));
+        }
+    }
+
+    /**
+     * Caches the destination of a link that carries it in its {@code redir} parameter. Links
+     * without one are left for the SDK to resolve when they are tapped.
+     *
+     * @return true if the destination of the link is known
+     */
+    boolean prefetch(String link) {
+        if (link == null) return false;
+
+        synchronized (this) {
+            if (cache.containsKey(link)) return true;
+        }
+
+        String destination = redirectTarget(link);
+        if (destination == null) return false;
+
+        put(link, destination, System.nanoTime());
+        metrics.increment(KitMetrics.LINK_PREFETCHED);
+        return true;
+    }
+
+    /**
+     * @return how long the link took to resolve in milliseconds, or -1 if it is not cached
+     */
+    synchronized long getResolveMillis(String link) {
+        ResolvedLink entry = cache.get(link);
+        return entry != null ? entry.resolveMillis : -1;
+    }
+
+    synchronized int size() {
+        return cache.size();
+    }
+
+    synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Adds the http(s) links found in the text to the list, e.g. the links of a push payload
+     * delivered as a JSON string.
+     */
+    static void findLinks(String text, List<String> links) {
+        if (text == null) return;
+
+        int start = text.indexOf("http");
+        while (start >= 0) {
+            int end = start;
+            while (end < text.length() && !isLinkTerminator(text.charAt(end))) {
+                end++;
+            }
+
+            String link = text.substring(start, end).replace("\\/", "/");
+            if (link.startsWith("https://") || link.startsWith("http://")) {
+                links.add(link);
+            }
+
+            start = text.indexOf("http", end);
+        }
+    }
+
+    private static boolean isLinkTerminator(char c) {
+        return c <= ' ' || c == '"' || c == '\'' || c == '<' || c == '>';
+    }
+
+    /**
+     * @return the decoded {@code redir} query parameter of the link, or null if there is none
+     */
+    static String redirectTarget(String link) {
+        int queryStart = link.indexOf('?');
+        if (queryStart < 0) return null;
+
+        int queryEnd = link.indexOf('#', queryStart);
+        if (queryEnd < 0) queryEnd = link.length();
+
+        String prefix = REDIRECT_PARAM + "=";
+        for (String pair : link.substring(queryStart + 1, queryEnd).split("&")) {
+            if (pair.startsWith(prefix) && pair.length() > prefix.length()) {
+                try {
+                    return URLDecoder.decode(pair.substring(prefix.length()), "UTF-8");
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,342 @@
+package com.mparticle.kits;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the errors and exceptions logged through mParticle into Blueshift events, cheap enough
+ * to leave on during a crash loop.
+ * <p>
+ * Each error is reduced to a fingerprint: the exception class and its top stack frames, or the
+ * message for a plain error, with the ids and counts it carries left out. Every fingerprint
+ * gets a token bucket of {@code maxPerMinute} events, refilled over a minute, and all of them
+ * share a bucket of {@link #MAX_TOTAL_PER_MINUTE}. An error that finds its bucket empty is
+ * only counted, and the count goes out with the next event of that fingerprint. The
+ * fingerprints are kept in an LRU of {@link #MAX_FINGERPRINTS} entries.
+ * <p>
+ * Breadcrumbs are kept in a ring of {@code breadcrumbCapacity} entries and attached, oldest
+ * first, to the next event sent.
+ * <p>
+ * A crash loop starts a new process each time, so the shared bucket can be saved with
+ * {@link #getTotalTokens()} and {@link #getTotalRefilledAtMillis()} and handed to the next
+ * process with {@link #restoreTotalBudget(int, long)}.
+ */
+class DiagnosticForwarder {
+
+    static final String EVENT_ERROR = "mparticle_error";
+    static final String EVENT_EXCEPTION = "mparticle_exception";
+
+    static final String KEY_MESSAGE = "error_message";
+    static final String KEY_EXCEPTION_CLASS = "exception_class";
+    static final String KEY_STACK = "stack";
+    static final String KEY_FINGERPRINT = "fingerprint";
+    static final String KEY_OCCURRENCES = "occurrences";
+    static final String KEY_BREADCRUMBS = "breadcrumbs";
+
+    static final int MAX_FINGERPRINTS = 128;
+    static final int MAX_TOTAL_PER_MINUTE = 20;
+
+    // frames that make the fingerprint, and frames sent with the event
+    private static final int FINGERPRINT_FRAMES = 3;
+    private static final int STACK_FRAMES = 8;
+    private static final int MAX_TEXT_LENGTH = 256;
+    private static final long MINUTE_MILLIS = 60000;
+
+    /**
+     * Token bucket refilled continuously at {@code capacity} tokens a minute.
+     */
+    static class TokenBucket {
+        private final int capacity;
+        private int tokens;
+        private long refilledAtMillis;
+
+        TokenBucket(int capacity, long nowMillis) {
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAtMillis = nowMillis;
+        }
+
+        boolean tryTake(long nowMillis) {
+            if (nowMillis < refilledAtMillis) {
+                // the clock went back, the interval starts over
+                refilledAtMillis = nowMillis;
+            }
+
+            if (tokens < capacity) {
+                long millisPerToken = MINUTE_MILLIS / capacity;
+                long earned = (nowMillis - refilledAtMillis) / millisPerToken;
+                if (earned > 0) {
+                    tokens = (int) Math.min(capacity, tokens + earned);
+                    // the unused part of the interval counts toward the next token
+                    refilledAtMillis = tokens == capacity ? nowMillis : refilledAtMillis + earned * millisPerToken;
+                }
+            } else {
+                refilledAtMillis = nowMillis;
+            }
+
+            if (tokens == 0) return false;
+
+            tokens--;
+            return true;
+        }
+
+        void giveBack() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+    }
+
+    private static class Fingerprint {
+        final TokenBucket bucket;
+        int suppressed = 0;
+
+        Fingerprint(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    private final EventBatcher.Sink sink;
+    private final int maxPerMinute;
+    private final KitMetrics metrics = KitMetrics.getInstance();
+
+    // guarded by this
+    private final LinkedHashMap<Long, Fingerprint> fingerprints = new LinkedHashMap<Long, Fingerprint>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Fingerprint> eldest) {
+            return size() > MAX_FINGERPRINTS;
+        }
+    };
+    private TokenBucket totalBucket;
+    private final String[] breadcrumbs;
+    private int breadcrumbStart = 0;
+    private int breadcrumbCount = 0;
+    private long suppressedCount = 0;
+
+    DiagnosticForwarder(EventBatcher.Sink sink, int maxPerMinute, int breadcrumbCapacity) {
+        this.sink = sink;
+        this.maxPerMinute = Math.max(1, maxPerMinute);
+        this.breadcrumbs = new String[Math.max(1, breadcrumbCapacity)];
+    }
+
+    /**
+     * Resumes the shared bucket saved by a previous process.
+     */
+    synchronized void restoreTotalBudget(int tokens, long refilledAtMillis) {
+        totalBucket = new TokenBucket(MAX_TOTAL_PER_MINUTE, refilledAtMillis);
+        totalBucket.tokens = Math.max(0, Math.min(MAX_TOTAL_PER_MINUTE, tokens));
+    }
+
+    synchronized int getTotalTokens() {
+        return totalBucket != null ? totalBucket.tokens : MAX_TOTAL_PER_MINUTE;
+    }
+
+    synchronized long getTotalRefilledAtMillis() {
+        return totalBucket != null ? totalBucket.refilledAtMillis : 0;
+    }
+
+    synchronized void leaveBreadcrumb(String breadcrumb) {
+        if (breadcrumb == null) return;
+
+        int index = (breadcrumbStart + breadcrumbCount) % breadcrumbs.length;
+        breadcrumbs[index] = truncate(breadcrumb);
+
+        if (breadcrumbCount < breadcrumbs.length) {
+            breadcrumbCount++;
+        } else {
+            // full, the oldest one is overwritten
+            breadcrumbStart = (breadcrumbStart + 1) % breadcrumbs.length;
+        }
+    }
+
+    /**
+     * @return true if the error was sent, false if it was only counted
+     */
+    boolean logError(String message, Map<String, String> attributes) {
+        return logError(message, attributes, System.currentTimeMillis());
+    }
+
+    boolean logError(String message, Map<String, String> attributes, long nowMillis) {
+        long fingerprint = IdentityFingerprint.mix(IdentityFingerprint.FNV_OFFSET_BASIS, normalize(message));
+
+        return send(EVENT_ERROR, fingerprint, attributes, nowMillis, message, null, null);
+    }
+
+    /**
+     * @return true if the exception was sent, false if it was only counted
+     */
+    boolean logException(Throwable exception, Map<String, String> attributes, String message) {
+        return logException(exception, attributes, message, System.currentTimeMillis());
+    }
+
+    boolean logException(Throwable exception, Map<String, String> attributes, String message, long nowMillis) {
+        if (exception == null) {
+            return logError(message, attributes, nowMillis);
+        }
+
+        StackTraceElement[] frames = exception.getStackTrace();
+        long fingerprint = fingerprint(exception.getClass().getName(), frames);
+
+        return send(EVENT_EXCEPTION, fingerprint, attributes, nowMillis,
+                message != null ? message : exception.getMessage(), exception.getClass().getName(), frames);
+    }
+
+    /**
+     * @return hash of the exception class and its top frames; line numbers are part of it, so
+     * the same throw site in another build is another fingerprint
+     */
+    static long fingerprint(String exceptionClass, StackTraceElement[] frames) {
+        long hash = IdentityFingerprint.mix(IdentityFingerprint.FNV_OFFSET_BASIS, exceptionClass);
+
+        int count = frames != null ? Math.min(FINGERPRINT_FRAMES, frames.length) : 0;
+        for (int i = 0; i < count; i++) {
+            StackTraceElement frame = frames[i];
+            hash = IdentityFingerprint.mix(hash, frame.getClassName());
+            hash = IdentityFingerprint.mix(hash, frame.getMethodName());
+            hash = IdentityFingerprint.mix(hash, String.valueOf(frame.getLineNumber()));
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return the message with every word that contains a digit (ids, counts, hashes) replaced
+     * by {@code #}, so "order 123 failed" and "order 456 failed" share a fingerprint
+     */
+    static String normalize(String message) {
+        if (message == null) return null;
+
+        StringBuilder builder = new StringBuilder(message.length());
+        int length = message.length();
+        int i = 0;
+        while (i < length) {
+            if (!Character.isLetterOrDigit(message.charAt(i))) {
+                builder.append(message.charAt(i++));
+                continue;
+            }
+
+            int end = i;
+            boolean hasDigit = false;
+            while (end < length && Character.isLetterOrDigit(message.charAt(end))) {
+                hasDigit |= Character.isDigit(message.charAt(end));
+                end++;
+            }
+
+            if (hasDigit) {
+                builder.append('#');
+            } else {
+                builder.append(message, i, end);
+            }
+            i = end;
+        }
+
+        return builder.toString();
+    }
+
+    private boolean send(String eventName, long fingerprint, Map<String, String> attributes, long nowMillis,
+                         String message, String exceptionClass, StackTraceElement[] frames) {
+        int occurrences;
+        List<String> attachedBreadcrumbs;
+
+        synchronized (this) {
+            Fingerprint entry = fingerprints.get(fingerprint);
+            if (entry == null) {
+                entry = new Fingerprint(new TokenBucket(maxPerMinute, nowMillis));
+                fingerprints.put(fingerprint, entry);
+            }
+
+            if (totalBucket == null) {
+                totalBucket = new TokenBucket(MAX_TOTAL_PER_MINUTE, nowMillis);
+            }
+
+            boolean allowed = entry.bucket.tryTake(nowMillis);
+            if (allowed && !totalBucket.tryTake(nowMillis)) {
+                // the fingerprint keeps its token for when the total allows it
+                entry.bucket.giveBack();
+                allowed = false;
+            }
+
+            if (!allowed) {
+                entry.suppressed++;
+                suppressedCount++;
+                metrics.increment(KitMetrics.DIAGNOSTICS_SUPPRESSED);
+                return false;
+            }
+
+            occurrences = entry.suppressed + 1;
+            entry.suppressed = 0;
+            attachedBreadcrumbs = takeBreadcrumbs();
+        }
+
+        // the event is built outside the lock, only for the errors that are sent
+        HashMap<String, Object> params = EventExtras.from(attributes, 6);
+        if (message != null) {
+            params.put(KEY_MESSAGE, truncate(message));
+        }
+        if (exceptionClass != null) {
+            params.put(KEY_EXCEPTION_CLASS, exceptionClass);
+            params.put(KEY_STACK, describe(frames));
+        }
+        params.put(KEY_FINGERPRINT, Long.toHexString(fingerprint));
+        params.put(KEY_OCCURRENCES, (long) occurrences);
+        if (attachedBreadcrumbs != null) {
+            params.put(KEY_BREADCRUMBS, attachedBreadcrumbs);
+        }
+
+        metrics.increment(KitMetrics.DIAGNOSTICS_FORWARDED);
+        sink.track(eventName, params);
+        return true;
+    }
+
+    private List<String> takeBreadcrumbs() {
+        if (breadcrumbCount == 0) return null;
+
+        List<String> taken = new ArrayList<>(breadcrumbCount);
+        for (int i = 0; i < breadcrumbCount; i++) {
+            int index = (breadcrumbStart + i) % breadcrumbs.length;
+            taken.add(breadcrumbs[index]);
+            breadcrumbs[index] = null;
+        }
+
+        breadcrumbStart = 0;
+        breadcrumbCount = 0;
+        return taken;
+    }
+
+    /**
+     * Forgets the breadcrumbs and the rate limiting state.
+     */
+    synchronized void clear() {
+        takeBreadcrumbs();
+        fingerprints.clear();
+        totalBucket = null;
+    }
+
+    /**
+     * @return number of errors counted but not sent
+     */
+    synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    synchronized int getFingerprintCount() {
+        return fingerprints.size();
+    }
+
+    private static String describe(StackTraceElement[] frames) {
+        StringBuilder builder = new StringBuilder();
+
+        int count = frames != null ? Math.min(STACK_FRAMES, frames.length) : 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) builder.append('\n');
+            builder.append(frames[i].toString());
+        }
+
+        return builder.toString();
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_TEXT_LENGTH ? text : text.substring(0, MAX_TEXT_LENGTH);
+    }
+}
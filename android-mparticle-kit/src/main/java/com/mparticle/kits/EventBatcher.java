@@ -0,0 +1,158 @@
+package com.mparticle.kits;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Accumulates forwarded events in a ring buffer and hands them to the {@link Sink} in batches.
+ * <p>
+ * A batch is flushed on the executor when the buffer holds {@code batchSize} events, when the
+ * oldest buffered event is {@code flushIntervalMillis} old, or when {@link #flush()} is called
+ * (e.g. when the app goes to background). If the buffer fills up before the executor gets to
+ * it, the caller drains it inline so that no event is lost.
+ */
+class EventBatcher {
+
+    interface Sink {
+        void track(String eventName, HashMap<String, Object> params);
+    }
+
+    /**
+     * Receives forwarded events along with their {@link EventJournal} sequence number, 0 for an
+     * event that was not journaled.
+     */
+    interface JournaledSink {
+        void track(String eventName, HashMap<String, Object> params, long seq);
+    }
+
+    private final JournaledSink sink;
+    private final KitExecutor executor;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+
+    // ring buffer
+    private final String[] names;
+    private final Object[] params;
+    private final long[] seqs;
+    private int head = 0;
+    private int count = 0;
+
+    // held while a batch is handed to the sink, so batches reach it one at a time and in order
+    private final Object drainLock = new Object();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean timerScheduled = new AtomicBoolean(false);
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            drain();
+        }
+    };
+
+    private final Runnable timerTask = new Runnable() {
+        @Override
+        public void run() {
+            timerScheduled.set(false);
+            drain();
+        }
+    };
+
+    EventBatcher(JournaledSink sink, KitExecutor executor, int batchSize, long flushIntervalMillis) {
+        this.sink = sink;
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+
+        int capacity = this.batchSize * 4;
+        this.names = new String[capacity];
+        this.params = new Object[capacity];
+        this.seqs = new long[capacity];
+    }
+
+    void add(String eventName, HashMap<String, Object> eventParams, long seq) {
+        boolean full;
+        int size;
+
+        synchronized (this) {
+            int capacity = names.length;
+            full = count == capacity;
+            if (!full) {
+                int tail = (head + count) % capacity;
+                names[tail] = eventName;
+                params[tail] = eventParams;
+                seqs[tail] = seq;
+                count++;
+            }
+
+            size = count;
+        }
+
+        if (full) {
+            // the executor is falling behind, drain on the caller and retry
+            drain();
+            add(eventName, eventParams, seq);
+        } else if (size >= batchSize) {
+            flush();
+        } else if (size == 1 && flushIntervalMillis > 0 && timerScheduled.compareAndSet(false, true)) {
+            executor.schedule(timerTask, flushIntervalMillis);
+        }
+    }
+
+    /**
+     * Flushes the buffered events on the executor.
+     */
+    void flush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.execute(flushTask);
+        }
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Hands every buffered event to the sink on the calling thread, oldest first.
+     */
+    void drain() {
+        synchronized (drainLock) {
+            drainLocked();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drainLocked() {
+        String[] batchNames;
+        Object[] batchParams;
+        long[] batchSeqs;
+        int batchCount;
+
+        synchronized (this) {
+            batchCount = count;
+            if (batchCount == 0) return;
+
+            batchNames = new String[batchCount];
+            batchParams = new Object[batchCount];
+            batchSeqs = new long[batchCount];
+
+            int capacity = names.length;
+            for (int i = 0; i < batchCount; i++) {
+                int index = (head + i) % capacity;
+                batchNames[i] = names[index];
+                batchParams[i] = params[index];
+                batchSeqs[i] = seqs[index];
+                names[index] = null;
+                params[index] = null;
+            }
+
+            head = 0;
+            count = 0;
+        }
+
+        for (int i = 0; i < batchCount; i++) {
+            sink.track(batchNames[i], (HashMap<String, Object>) batchParams[i], batchSeqs[i]);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mparticle.kits;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts mParticle attribute maps into the {@code HashMap<String, Object>} the Blueshift
+ * SDK takes as event params.
+ * <p>
+ * The SDK copies the params into its own payload and accepts null, so events without
+ * attributes are forwarded with null params instead of an empty map. When a map is needed it
+ * is sized up front so that filling it never triggers a resize.
+ */
+final class EventExtras {
+
+    private EventExtras() {
+    }
+
+    static HashMap<String, Object> from(Map<String, String> attributes) {
+        return from(attributes, 0);
+    }
+
+    /**
+     * @param attributes mParticle attributes, may be null
+     * @param extraSlots number of entries the caller will add to the returned map
+     * @return a map holding the attributes with room for the extra entries, or null when the
+     * map would be empty
+     */
+    static HashMap<String, Object> from(Map<String, String> attributes, int extraSlots) {
+        int size = attributes != null ? attributes.size() : 0;
+        if (size + extraSlots == 0) return null;
+
+        HashMap<String, Object> extras = new HashMap<>(capacityFor(size + extraSlots));
+        if (size > 0) {
+            extras.putAll(attributes);
+        }
+
+        return extras;
+    }
+
+    /**
+     * @return initial capacity that holds the given number of entries without a resize at the
+     * default load factor
+     */
+    static int capacityFor(int entries) {
+        return entries < 3 ? entries + 1 : (int) (entries / 0.75f + 1.0f);
+    }
+}
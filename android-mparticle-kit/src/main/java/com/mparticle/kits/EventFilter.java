@@ -0,0 +1,111 @@
+package com.mparticle.kits;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decides which events the kit forwards to Blueshift and which attribute keys it strips from
+ * them. The rules are compiled once from the kit settings:
+ * <ul>
+ * <li>allowlist: when set, only matching events are forwarded</li>
+ * <li>denylist: matching events are never forwarded</li>
+ * <li>sampling: {@code name:rate} pairs, the named event is forwarded with the given
+ * probability (0.0 - 1.0)</li>
+ * <li>stripped keys: matching attribute keys are removed before forwarding</li>
+ * </ul>
+ * Allowlists, denylists and stripped keys accept exact names and {@code prefix*} patterns.
+ */
+class EventFilter {
+
+    private final NameMatcher allowlist;
+    private final NameMatcher denylist;
+    private final NameMatcher strippedKeys;
+    private final HashMap<String, Float> sampleRates;
+    private final Random random;
+
+    private EventFilter(NameMatcher allowlist, NameMatcher denylist, NameMatcher strippedKeys,
+                        HashMap<String, Float> sampleRates, Random random) {
+        this.allowlist = allowlist;
+        this.denylist = denylist;
+        this.strippedKeys = strippedKeys;
+        this.sampleRates = sampleRates;
+        this.random = random;
+    }
+
+    static EventFilter parse(String allowlist, String denylist, String sampling, String strippedKeys) {
+        return parse(allowlist, denylist, sampling, strippedKeys, new Random());
+    }
+
+    static EventFilter parse(String allowlist, String denylist, String sampling, String strippedKeys, Random random) {
+        return new EventFilter(
+                NameMatcher.parse(allowlist),
+                NameMatcher.parse(denylist),
+                NameMatcher.parse(strippedKeys),
+                parseSampleRates(sampling),
+                random
+        );
+    }
+
+    private static HashMap<String, Float> parseSampleRates(String sampling) {
+        HashMap<String, Float> rates = new HashMap<>();
+
+        if (sampling != null) {
+            for (String entry : sampling.split(",")) {
+                int separator = entry.lastIndexOf(':');
+                if (separator <= 0) continue;
+
+                String name = entry.substring(0, separator).trim();
+                try {
+                    float rate = Float.parseFloat(entry.substring(separator + 1).trim());
+                    rates.put(name, Math.max(0f, Math.min(1f, rate)));
+                } catch (NumberFormatException ignored) {
+                    // skip the malformed entry, the rest of the rules still apply
+                }
+            }
+        }
+
+        return rates;
+    }
+
+    /**
+     * @return true if no rule is configured and every event is forwarded untouched
+     */
+    boolean isEmpty() {
+        return allowlist.isEmpty() && denylist.isEmpty() && strippedKeys.isEmpty() && sampleRates.isEmpty();
+    }
+
+    boolean shouldForward(String eventName) {
+        if (!allowlist.isEmpty() && !allowlist.matches(eventName)) return false;
+
+        if (denylist.matches(eventName)) return false;
+
+        if (!sampleRates.isEmpty()) {
+            Float rate = sampleRates.get(eventName);
+            if (rate != null && random.nextFloat() >= rate) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the attribute keys matching the stripped key rules from the given map.
+     */
+    void stripAttributes(Map<String, Object> extras) {
+        if (extras == null || extras.isEmpty() || strippedKeys.isEmpty()) return;
+
+        if (strippedKeys.hasPrefixes()) {
+            Iterator<String> keys = extras.keySet().iterator();
+            while (keys.hasNext()) {
+                if (strippedKeys.matches(keys.next())) {
+                    keys.remove();
+                }
+            }
+        } else {
+            for (String key : strippedKeys.getExactNames()) {
+                extras.remove(key);
+            }
+        }
+    }
+}
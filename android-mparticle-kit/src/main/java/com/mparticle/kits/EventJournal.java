@@ -0,0 +1,577 @@
+package com.mparticle.kits;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk journal of the events the kit forwards to Blueshift.
+ * <p>
+ * {@link #append(String, HashMap)} only queues the event in memory. The queued events are
+ * encoded and written sequentially, in one write per batch, on the given executor. Every
+ * record carries a sequence number, and every event that leaves the kit, handed to the SDK or
+ * dropped, is reported by that number with {@link #markDelivered(long)}, in whatever order that
+ * happens.
+ * A segment file is deleted once every record in it is delivered.
+ * <p>
+ * The records still outstanding are saved in a checkpoint file next to the segments, so
+ * {@link #open()} replays only the events the previous process did not deliver. The
+ * checkpoint is not synced: losing it to a power cut means some delivered events are sent
+ * again, never that one is lost.
+ * <p>
+ * The journal is split into segment files so that it can stay under {@code maxBytes}: when
+ * the total size goes over the cap, the oldest segment is evicted, delivered or not. Every
+ * record carries its length and a CRC32, so a record cut short by a crash is detected and
+ * dropped on replay along with anything after it in that segment.
+ */
+class EventJournal {
+
+    static class Record {
+        final long seq;
+        final String eventName;
+        final HashMap<String, Object> params;
+
+        Record(long seq, String eventName, HashMap<String, Object> params) {
+            this.seq = seq;
+            this.eventName = eventName;
+            this.params = params;
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        long lastSeq;
+        long bytes;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int SEGMENTS_PER_JOURNAL = 4;
+    private static final String CHECKPOINT_FILE = "delivered.checkpoint";
+
+    // value tags
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_LIST = 5;
+    private static final byte TYPE_MAP = 6;
+
+    private final File directory;
+    private final Executor executor;
+    private final long maxBytes;
+    private final long segmentBytes;
+
+    // guarded by this
+    private final List<Record> pending = new ArrayList<>();
+    private long lastSeq = 0;
+    // sequence numbers appended but not delivered
+    private final TreeSet<Long> outstanding = new TreeSet<>();
+    private boolean checkpointDirty = false;
+
+    // only touched on the executor
+    private final LinkedList<Segment> segments = new LinkedList<>();
+    private int nextSegmentIndex = 0;
+
+    private final AtomicLong evictedSegments = new AtomicLong();
+    private final AtomicBoolean commitScheduled = new AtomicBoolean(false);
+
+    private final Runnable commitTask = new Runnable() {
+        @Override
+        public void run() {
+            commitScheduled.set(false);
+            commit();
+        }
+    };
+
+    EventJournal(File directory, Executor executor, long maxBytes) {
+        this.directory = directory;
+        this.executor = executor;
+        this.maxBytes = Math.max(1024, maxBytes);
+        this.segmentBytes = this.maxBytes / SEGMENTS_PER_JOURNAL;
+    }
+
+    /**
+     * Reads the events left in the journal by the previous process. Must run before the first
+     * append. The returned events stay in the journal until they are reported
+     * delivered, so they survive another crash during the replay.
+     *
+     * @return undelivered events, oldest first
+     */
+    List<Record> open() {
+        List<Record> records = new ArrayList<>();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return records;
+        }
+
+        // records up to checkpointSeq are delivered unless the checkpoint lists them
+        Set<Long> undelivered = new HashSet<>();
+        long checkpointSeq = readCheckpoint(new File(directory, CHECKPOINT_FILE), undelivered);
+        long maxSeq = checkpointSeq;
+
+        File[] files = directory.listFiles();
+        if (files == null) return records;
+
+        List<File> segmentFiles = new ArrayList<>();
+        for (File file : files) {
+            if (segmentIndex(file) >= 0) {
+                segmentFiles.add(file);
+            }
+        }
+
+        Collections.sort(segmentFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return segmentIndex(a) - segmentIndex(b);
+            }
+        });
+
+        List<Record> segmentRecords = new ArrayList<>();
+        for (File file : segmentFiles) {
+            segmentRecords.clear();
+            readSegment(file, segmentRecords);
+
+            Segment segment = new Segment(file);
+            segment.bytes = file.length();
+            segments.add(segment);
+
+            for (Record record : segmentRecords) {
+                segment.lastSeq = Math.max(segment.lastSeq, record.seq);
+                maxSeq = Math.max(maxSeq, record.seq);
+
+                if (record.seq > checkpointSeq || undelivered.contains(record.seq)) {
+                    records.add(record);
+                }
+            }
+
+            nextSegmentIndex = Math.max(nextSegmentIndex, segmentIndex(file) + 1);
+        }
+
+        synchronized (this) {
+            lastSeq = maxSeq;
+            for (Record record : records) {
+                outstanding.add(record.seq);
+            }
+            checkpointDirty = true;
+        }
+
+        return records;
+    }
+
+    /**
+     * Journals the event.
+     *
+     * @return the sequence number to report the event with to {@link #markDelivered(long)}
+     */
+    long append(String eventName, HashMap<String, Object> params) {
+        long seq;
+        synchronized (this) {
+            seq = ++lastSeq;
+            pending.add(new Record(seq, eventName, params));
+            outstanding.add(seq);
+        }
+
+        scheduleCommit();
+        return seq;
+    }
+
+    /**
+     * Reports that the event journaled with the given sequence number was handed to the SDK,
+     * or dropped, so it is not replayed. Events may be reported in any order.
+     */
+    void markDelivered(long seq) {
+        synchronized (this) {
+            if (!outstanding.remove(seq)) return;
+
+            checkpointDirty = true;
+        }
+
+        scheduleCommit();
+    }
+
+    /**
+     * Forgets every event in the journal, written or not, and deletes its segment files.
+     * Runs on the executor.
+     */
+    void discard() {
+        synchronized (this) {
+            pending.clear();
+            outstanding.clear();
+            checkpointDirty = false;
+        }
+
+        for (Segment segment : segments) {
+            //noinspection ResultOfMethodCallIgnored
+            segment.file.delete();
+        }
+
+        segments.clear();
+
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, CHECKPOINT_FILE).delete();
+    }
+
+    long getEvictedSegmentCount() {
+        return evictedSegments.get();
+    }
+
+    private void scheduleCommit() {
+        if (commitScheduled.compareAndSet(false, true)) {
+            executor.execute(commitTask);
+        }
+    }
+
+    /**
+     * Writes the pending events, deletes the segments that are fully delivered or over the
+     * size cap and saves the checkpoint. Runs on the executor.
+     */
+    void commit() {
+        List<Record> batch;
+        synchronized (this) {
+            batch = pending.isEmpty() ? Collections.<Record>emptyList() : new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+
+        checkpoint();
+    }
+
+    private void write(List<Record> batch) {
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.bytes >= segmentBytes) {
+            segment = new Segment(new File(directory, SEGMENT_PREFIX + nextSegmentIndex++ + SEGMENT_SUFFIX));
+            segments.add(segment);
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (Record record : batch) {
+            segment.lastSeq = record.seq;
+
+            try {
+                byte[] payload = encode(record);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+            } catch (IOException e) {
+                // the record cannot be encoded (e.g. an oversized string), skip it
+            }
+        }
+
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(segment.file, true);
+            BufferedOutputStream bufferedStream = new BufferedOutputStream(stream);
+            buffer.writeTo(bufferedStream);
+            bufferedStream.flush();
+
+            // one sync per batch, off the caller's thread
+            stream.getFD().sync();
+
+            segment.bytes += buffer.size();
+        } catch (IOException ignored) {
+            // the events still reach the SDK, only their durability is lost
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    private void checkpoint() {
+        // every record up to this one is delivered
+        long delivered;
+        synchronized (this) {
+            delivered = outstanding.isEmpty() ? lastSeq : outstanding.first() - 1;
+        }
+
+        long totalBytes = 0;
+        for (Segment segment : segments) {
+            totalBytes += segment.bytes;
+        }
+
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+
+            boolean fullyDelivered = oldest.lastSeq <= delivered;
+            boolean overCap = totalBytes > maxBytes && segments.size() > 1;
+
+            if (!fullyDelivered && !overCap) break;
+
+            if (!fullyDelivered) {
+                evictedSegments.incrementAndGet();
+
+                // the evicted records cannot be replayed anymore
+                synchronized (this) {
+                    outstanding.headSet(oldest.lastSeq, true).clear();
+                    checkpointDirty = true;
+                }
+            }
+
+            segments.pollFirst();
+            totalBytes -= oldest.bytes;
+
+            //noinspection ResultOfMethodCallIgnored
+            oldest.file.delete();
+        }
+
+        writeCheckpoint();
+    }
+
+    /**
+     * Saves the last sequence number and the outstanding ones below it. Written to a temporary
+     * file and renamed over the previous checkpoint, so a kill never leaves half of one.
+     */
+    private void writeCheckpoint() {
+        long checkpointSeq;
+        Long[] undelivered;
+        synchronized (this) {
+            if (!checkpointDirty) return;
+
+            checkpointDirty = false;
+            checkpointSeq = lastSeq;
+            undelivered = outstanding.toArray(new Long[outstanding.size()]);
+        }
+
+        File file = new File(directory, CHECKPOINT_FILE);
+        File temporary = new File(directory, CHECKPOINT_FILE + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeLong(checkpointSeq);
+            out.writeInt(undelivered.length);
+            for (Long seq : undelivered) {
+                out.writeLong(seq);
+            }
+            out.close();
+            out = null;
+
+            if (!temporary.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                temporary.delete();
+            }
+        } catch (IOException ignored) {
+            // the next checkpoint tries again, meanwhile a restart replays more than it should
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * @return the last sequence number of the checkpoint, or 0 if there is none
+     */
+    private static long readCheckpoint(File file, Set<Long> undelivered) {
+        if (!file.exists()) return 0;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+
+            long checkpointSeq = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                undelivered.add(in.readLong());
+            }
+
+            return checkpointSeq;
+        } catch (IOException e) {
+            // an unreadable checkpoint replays everything, as if there was none
+            undelivered.clear();
+            return 0;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static int segmentIndex(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return -1;
+
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void readSegment(File file, List<Record> records) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int checksum = in.readInt();
+                if (length < 0 || length > file.length()) break;
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) break;
+
+                records.add(decode(payload));
+            }
+        } catch (IOException ignored) {
+            // a torn write at the tail, keep what was read so far
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    // ** encoding **
+
+    static byte[] encode(Record record) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        out.writeLong(record.seq);
+        out.writeUTF(record.eventName != null ? record.eventName : "");
+        writeMap(out, record.params);
+
+        return buffer.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        long seq = in.readLong();
+        String eventName = in.readUTF();
+        Object params = readValue(in);
+
+        return new Record(seq, eventName, (HashMap<String, Object>) params);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        if (map == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+
+        out.writeByte(TYPE_MAP);
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            out.writeUTF(String.valueOf(entry.getKey()));
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Object[]) {
+            writeValue(out, Arrays.asList((Object[]) value));
+        } else if (value instanceof Map) {
+            writeMap(out, (Map<?, ?>) value);
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case TYPE_MAP: {
+                int size = in.readInt();
+                HashMap<String, Object> map = new HashMap<>(EventExtras.capacityFor(size));
+                for (int i = 0; i < size; i++) {
+                    String key = in.readUTF();
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.mparticle.kits;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue between the kit callbacks and {@code Blueshift.trackEvent}.
+ * <p>
+ * Events are handed to the {@link EventBatcher.JournaledSink} on the {@link KitExecutor}, a slice at a
+ * time, so that priority tasks queued meanwhile (identify calls) get to run between slices.
+ * When the queue is full the {@link Policy} decides what happens to the new event:
+ * <ul>
+ * <li>{@link Policy#BLOCK} makes the caller wait for room, up to {@code blockTimeoutMillis},
+ * then drops the event. The executor's own thread never waits, it is the one that makes room.</li>
+ * <li>{@link Policy#DROP_OLDEST} drops the oldest queued event.</li>
+ * <li>{@link Policy#DROP_NEWEST} drops the new event.</li>
+ * <li>{@link Policy#SAMPLE} starts dropping new events at random once the queue is half full,
+ * more of them the fuller it gets, and all of them when it is full.</li>
+ * </ul>
+ * Every dropped event is reported to the {@link DropListener}.
+ * <p>
+ * A queue created for the priority lane drains with {@link KitExecutor#executePriority(Runnable)},
+ * ahead of the regular work, and is bounded the same way.
+ */
+class ForwardingQueue {
+
+    enum Policy {
+        BLOCK, DROP_OLDEST, DROP_NEWEST, SAMPLE;
+
+        static Policy parse(String value, Policy defaultPolicy) {
+            if (KitUtils.isEmpty(value)) return defaultPolicy;
+
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                return defaultPolicy;
+            }
+        }
+    }
+
+    interface DropListener {
+        void onDropped(String eventName, HashMap<String, Object> params, long seq);
+    }
+
+    // events handed to the sink per executor task
+    private static final int SLICE_SIZE = 32;
+
+    private final EventBatcher.JournaledSink sink;
+    private final DropListener dropListener;
+    private final KitExecutor executor;
+    private final boolean priority;
+    private final Policy policy;
+    private final long blockTimeoutMillis;
+    private final Random random;
+
+    // ring buffer, guarded by this
+    private final String[] names;
+    private final Object[] params;
+    private final long[] seqs;
+    private int head = 0;
+    private int count = 0;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainScheduled.set(false);
+            drainSlice();
+        }
+    };
+
+    ForwardingQueue(EventBatcher.JournaledSink sink, DropListener dropListener, KitExecutor executor,
+                    int capacity, Policy policy, long blockTimeoutMillis, Random random) {
+        this(sink, dropListener, executor, false, capacity, policy, blockTimeoutMillis, random);
+    }
+
+    /**
+     * @param priority true to drain on the priority lane of the executor
+     */
+    ForwardingQueue(EventBatcher.JournaledSink sink, DropListener dropListener, KitExecutor executor, boolean priority,
+                    int capacity, Policy policy, long blockTimeoutMillis, Random random) {
+        this.sink = sink;
+        this.dropListener = dropListener;
+        this.executor = executor;
+        this.priority = priority;
+        this.policy = policy;
+        this.blockTimeoutMillis = Math.max(0, blockTimeoutMillis);
+        this.random = random;
+
+        int size = Math.max(1, capacity);
+        this.names = new String[size];
+        this.params = new Object[size];
+        this.seqs = new long[size];
+    }
+
+    /**
+     * Queues the event, or drops an event according to the policy if the queue is full.
+     *
+     * @param seq the event's journal sequence number, handed back to the sink or drop listener
+     * @return false if the new event was dropped
+     */
+    @SuppressWarnings("unchecked")
+    boolean offer(String eventName, HashMap<String, Object> eventParams, long seq) {
+        String droppedName = null;
+        HashMap<String, Object> droppedParams = null;
+        long droppedSeq = 0;
+        boolean accepted;
+
+        synchronized (this) {
+            if (policy == Policy.BLOCK && count == names.length && !executor.isExecutorThread()) {
+                awaitRoomLocked();
+            }
+
+            accepted = count < names.length && (policy != Policy.SAMPLE || sampleLocked());
+
+            if (!accepted && policy == Policy.DROP_OLDEST) {
+                droppedName = names[head];
+                droppedParams = (HashMap<String, Object>) params[head];
+                droppedSeq = seqs[head];
+                names[head] = null;
+                params[head] = null;
+                head = (head + 1) % names.length;
+                count--;
+                accepted = true;
+            }
+
+            if (accepted) {
+                int tail = (head + count) % names.length;
+                names[tail] = eventName;
+                params[tail] = eventParams;
+                seqs[tail] = seq;
+                count++;
+            } else {
+                droppedName = eventName;
+                droppedParams = eventParams;
+                droppedSeq = seq;
+            }
+        }
+
+        if (droppedName != null) {
+            droppedCount.incrementAndGet();
+            dropListener.onDropped(droppedName, droppedParams, droppedSeq);
+        }
+
+        if (accepted) {
+            scheduleDrain();
+        }
+
+        return accepted;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void awaitRoomLocked() {
+        long deadline = System.currentTimeMillis() + blockTimeoutMillis;
+
+        try {
+            while (count == names.length) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return;
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts everything up to half full, then a linearly shrinking share of the events.
+     */
+    private boolean sampleLocked() {
+        int half = names.length / 2;
+        if (count < half) return true;
+
+        float acceptRate = (float) (names.length - count) / (names.length - half);
+        return random.nextFloat() < acceptRate;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            if (priority) {
+                executor.executePriority(drainTask);
+            } else {
+                executor.execute(drainTask);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drainSlice() {
+        String[] sliceNames = new String[SLICE_SIZE];
+        Object[] sliceParams = new Object[SLICE_SIZE];
+        long[] sliceSeqs = new long[SLICE_SIZE];
+        int sliceCount = 0;
+        boolean more;
+
+        synchronized (this) {
+            while (count > 0 && sliceCount < SLICE_SIZE) {
+                sliceNames[sliceCount] = names[head];
+                sliceParams[sliceCount] = params[head];
+                sliceSeqs[sliceCount] = seqs[head];
+                names[head] = null;
+                params[head] = null;
+                head = (head + 1) % names.length;
+                count--;
+                sliceCount++;
+            }
+
+            more = count > 0;
+
+            // wake up callers blocked on a full queue
+            notifyAll();
+        }
+
+        for (int i = 0; i < sliceCount; i++) {
+            sink.track(sliceNames[i], (HashMap<String, Object>) sliceParams[i], sliceSeqs[i]);
+        }
+
+        if (more) {
+            // requeue behind the tasks submitted meanwhile
+            scheduleDrain();
+        }
+    }
+}
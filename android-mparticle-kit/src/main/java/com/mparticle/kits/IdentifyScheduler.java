@@ -0,0 +1,75 @@
+package com.mparticle.kits;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces bursts of identify requests into a single identify call.
+ * <p>
+ * The first request schedules the identify task to run after the coalescing window. Every
+ * request that arrives before the task runs is merged into it. When it is due, the task runs
+ * on the priority lane of the executor, ahead of the events already queued. The task reads the user details
+ * when it runs, so the merged call always carries the latest state.
+ */
+class IdentifyScheduler {
+
+    private final Runnable identifyTask;
+    private final KitExecutor executor;
+    private final long windowMillis;
+
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong identifyCount = new AtomicLong();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            runIdentify();
+        }
+    };
+
+    IdentifyScheduler(Runnable identifyTask, KitExecutor executor, long windowMillis) {
+        this.identifyTask = identifyTask;
+        this.executor = executor;
+        this.windowMillis = Math.max(0, windowMillis);
+    }
+
+    /**
+     * Requests an identify call. The call is merged with any identify that is already waiting
+     * for its window to close. With a zero window the identify runs on the calling thread.
+     */
+    void schedule() {
+        requestCount.incrementAndGet();
+
+        if (pending.compareAndSet(false, true)) {
+            if (windowMillis == 0) {
+                runIdentify();
+            } else {
+                // on the priority lane, so the identify is not queued behind the events
+                executor.schedulePriority(flushTask, windowMillis);
+            }
+        }
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    long getIdentifyCount() {
+        return identifyCount.get();
+    }
+
+    /**
+     * @return number of identify requests that were merged into another identify call
+     */
+    long getCoalescedCount() {
+        return requestCount.get() - identifyCount.get() - (pending.get() ? 1 : 0);
+    }
+
+    private void runIdentify() {
+        // clear the flag before running so that requests made during the identify get their own call
+        pending.set(false);
+        identifyCount.incrementAndGet();
+        identifyTask.run();
+    }
+}
@@ -0,0 +1,132 @@
+package com.mparticle.kits;
+
+import com.mparticle.MParticle;
+import com.mparticle.consent.CCPAConsent;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.consent.GDPRConsent;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks a 64 bit fingerprint of what a Blueshift identify call carries: the identities the
+ * kit maps, the push token and the consent state.
+ * <p>
+ * Each part is hashed on its own, so a callback that only knows one of them (e.g. a push
+ * token refresh) can be compared against the last known value of that part alone. The
+ * setters return true only when the part actually changed; the caller skips the identify
+ * call otherwise, and persists the hashes once the call is sent.
+ */
+class IdentityFingerprint {
+
+    /**
+     * Identity types copied into the Blueshift user profile.
+     */
+    static final MParticle.IdentityType[] MAPPED_IDENTITY_TYPES = {
+            MParticle.IdentityType.CustomerId,
+            MParticle.IdentityType.Email
+    };
+
+    // hash of a part that has not been seen yet
+    static final long UNKNOWN = 0;
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // outside of the char range, so they cannot be produced by a string
+    private static final int NULL_MARKER = 0x10000;
+    private static final int TERMINATOR = 0x10001;
+
+    private long identitiesHash;
+    private long pushTokenHash;
+    private long consentHash;
+
+    IdentityFingerprint(long identitiesHash, long pushTokenHash, long consentHash) {
+        this.identitiesHash = identitiesHash;
+        this.pushTokenHash = pushTokenHash;
+        this.consentHash = consentHash;
+    }
+
+    synchronized boolean setIdentities(Map<MParticle.IdentityType, String> identities) {
+        long hash = hashIdentities(identities);
+        if (hash == identitiesHash) return false;
+
+        identitiesHash = hash;
+        return true;
+    }
+
+    synchronized boolean setPushToken(String pushToken) {
+        long hash = mix(FNV_OFFSET_BASIS, pushToken);
+        if (hash == pushTokenHash) return false;
+
+        pushTokenHash = hash;
+        return true;
+    }
+
+    synchronized boolean setConsent(ConsentState consentState) {
+        long hash = hashConsent(consentState);
+        if (hash == consentHash) return false;
+
+        consentHash = hash;
+        return true;
+    }
+
+    synchronized long getIdentitiesHash() {
+        return identitiesHash;
+    }
+
+    synchronized long getPushTokenHash() {
+        return pushTokenHash;
+    }
+
+    synchronized long getConsentHash() {
+        return consentHash;
+    }
+
+    static long hashIdentities(Map<MParticle.IdentityType, String> identities) {
+        long hash = FNV_OFFSET_BASIS;
+        for (MParticle.IdentityType type : MAPPED_IDENTITY_TYPES) {
+            hash = mix(hash, identities != null ? identities.get(type) : null);
+        }
+        return hash;
+    }
+
+    static long hashConsent(ConsentState consentState) {
+        long hash = FNV_OFFSET_BASIS;
+        if (consentState == null) return mix(hash, null);
+
+        Map<String, GDPRConsent> gdpr = consentState.getGDPRConsentState();
+        if (gdpr != null) {
+            // purposes in a stable order
+            for (Map.Entry<String, GDPRConsent> entry : new TreeMap<>(gdpr).entrySet()) {
+                GDPRConsent consent = entry.getValue();
+                hash = mix(hash, entry.getKey());
+                hash = mix(hash, consent != null && consent.isConsented() ? "1" : "0");
+            }
+        }
+
+        CCPAConsent ccpa = consentState.getCCPAConsentState();
+        hash = mix(hash, ccpa == null ? null : ccpa.isConsented() ? "1" : "0");
+
+        return hash;
+    }
+
+    /**
+     * Folds the value into the hash with FNV-1a. Every value is terminated, and null is
+     * folded differently from the empty string.
+     */
+    static long mix(long hash, String value) {
+        if (value == null) {
+            hash = (hash ^ NULL_MARKER) * FNV_PRIME;
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+
+        hash = (hash ^ TERMINATOR) * FNV_PRIME;
+
+        // never collide with the "not seen yet" marker
+        return hash == UNKNOWN ? 1 : hash;
+    }
+}
@@ -0,0 +1,284 @@
+package com.mparticle.kits;
+
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Impression;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.Promotion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects product impressions and promotions over a time window and hands them to the
+ * {@link EventBatcher.Sink} as a single summary event.
+ * <p>
+ * Impressions are grouped by product list and deduplicated by SKU, promotions by action and
+ * id. Repeats only bump a counter, so a list scrolled back and forth costs the same as one
+ * pass. The window starts with the first impression or promotion after a flush, which
+ * schedules its timer; it is also cut short when it holds {@code maxEntries} distinct
+ * products and promotions. A timer only flushes the window that scheduled it, so a window cut
+ * short does not shorten the next one.
+ */
+class ImpressionAggregator {
+
+    static final String EVENT_NAME = "impression_summary";
+
+    static final String KEY_IMPRESSIONS = "impressions";
+    static final String KEY_PROMOTIONS = "promotions";
+    static final String KEY_LIST = "list";
+    static final String KEY_SKUS = "skus";
+    static final String KEY_COUNT = "count";
+    static final String KEY_IMPRESSION_COUNT = "impression_count";
+    static final String KEY_PROMOTION_COUNT = "promotion_count";
+    static final String KEY_ACTION = "action";
+    static final String KEY_ID = "id";
+    static final String KEY_NAME = "name";
+    static final String KEY_CREATIVE = "creative";
+    static final String KEY_POSITION = "position";
+
+    private static final String NO_LIST = "";
+
+    private static class ListSummary {
+        final Set<String> skus = new LinkedHashSet<>();
+        long count;
+    }
+
+    private static class PromotionSummary {
+        final String action;
+        final Promotion promotion;
+        long count;
+
+        PromotionSummary(String action, Promotion promotion) {
+            this.action = action;
+            this.promotion = promotion;
+        }
+    }
+
+    private final EventBatcher.Sink sink;
+    private final KitExecutor executor;
+    private final long windowMillis;
+    private final int maxEntries;
+
+    // guarded by this
+    private Map<String, ListSummary> lists = new LinkedHashMap<>();
+    private Map<String, PromotionSummary> promotions = new LinkedHashMap<>();
+    private int entryCount = 0;
+    private long impressionCount = 0;
+    private long promotionCount = 0;
+    // bumped by every drain, the timer of a drained window finds it gone
+    private long window = 0;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            drain();
+        }
+    };
+
+    ImpressionAggregator(EventBatcher.Sink sink, KitExecutor executor, long windowMillis, int maxEntries) {
+        this.sink = sink;
+        this.executor = executor;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Adds the impressions and promotions of the event to the current window.
+     *
+     * @return true if the event carried any
+     */
+    boolean add(CommerceEvent commerceEvent) {
+        List<Impression> eventImpressions = commerceEvent.getImpressions();
+        List<Promotion> eventPromotions = commerceEvent.getPromotions();
+
+        boolean hasImpressions = eventImpressions != null && !eventImpressions.isEmpty();
+        boolean hasPromotions = eventPromotions != null && !eventPromotions.isEmpty();
+        if (!hasImpressions && !hasPromotions) return false;
+
+        boolean windowStarted;
+        boolean full;
+        long startedWindow;
+
+        synchronized (this) {
+            windowStarted = impressionCount == 0 && promotionCount == 0;
+            startedWindow = window;
+
+            if (hasImpressions) {
+                for (Impression impression : eventImpressions) {
+                    addImpressionLocked(impression);
+                }
+            }
+
+            if (hasPromotions) {
+                String action = commerceEvent.getPromotionAction();
+                for (Promotion promotion : eventPromotions) {
+                    addPromotionLocked(action, promotion);
+                }
+            }
+
+            full = entryCount >= maxEntries;
+        }
+
+        if (full) {
+            flush();
+        } else if (windowStarted) {
+            scheduleTimer(startedWindow);
+        }
+
+        return true;
+    }
+
+    /**
+     * Emits the current window on the executor.
+     */
+    void flush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.execute(flushTask);
+        }
+    }
+
+    synchronized int size() {
+        return entryCount;
+    }
+
+    /**
+     * Emits the current window on the calling thread, if it holds anything.
+     */
+    void drain() {
+        drain(-1);
+    }
+
+    private void scheduleTimer(final long timerWindow) {
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                drain(timerWindow);
+            }
+        }, windowMillis);
+    }
+
+    /**
+     * @param onlyWindow the window to emit, or -1 for whichever is current
+     */
+    private void drain(long onlyWindow) {
+        Map<String, ListSummary> windowLists;
+        Map<String, PromotionSummary> windowPromotions;
+        long windowImpressions;
+        long windowPromotionCount;
+
+        synchronized (this) {
+            if (onlyWindow >= 0 && onlyWindow != window) return;
+            if (impressionCount == 0 && promotionCount == 0) return;
+
+            window++;
+
+            windowLists = lists;
+            windowPromotions = promotions;
+            windowImpressions = impressionCount;
+            windowPromotionCount = promotionCount;
+
+            lists = new LinkedHashMap<>();
+            promotions = new LinkedHashMap<>();
+            entryCount = 0;
+            impressionCount = 0;
+            promotionCount = 0;
+        }
+
+        sink.track(EVENT_NAME, summarize(windowLists, windowPromotions, windowImpressions, windowPromotionCount));
+    }
+
+    private void addImpressionLocked(Impression impression) {
+        if (impression == null || impression.getProducts() == null) return;
+
+        String listName = impression.getListName() != null ? impression.getListName() : NO_LIST;
+        ListSummary summary = lists.get(listName);
+        if (summary == null) {
+            summary = new ListSummary();
+            lists.put(listName, summary);
+        }
+
+        for (Product product : impression.getProducts()) {
+            if (product == null) continue;
+
+            impressionCount++;
+            summary.count++;
+
+            String sku = product.getSku();
+            if (sku != null && summary.skus.add(sku)) {
+                entryCount++;
+            }
+        }
+    }
+
+    private void addPromotionLocked(String action, Promotion promotion) {
+        if (promotion == null) return;
+
+        String id = promotion.getId() != null ? promotion.getId() : promotion.getName();
+        String key = action + '\u0000' + id;
+
+        PromotionSummary summary = promotions.get(key);
+        if (summary == null) {
+            summary = new PromotionSummary(action, promotion);
+            promotions.put(key, summary);
+            entryCount++;
+        }
+
+        summary.count++;
+        promotionCount++;
+    }
+
+    private static HashMap<String, Object> summarize(Map<String, ListSummary> lists,
+                                                     Map<String, PromotionSummary> promotions,
+                                                     long impressionCount,
+                                                     long promotionCount) {
+        HashMap<String, Object> params = new HashMap<>(EventExtras.capacityFor(4));
+
+        if (!lists.isEmpty()) {
+            List<Map<String, Object>> impressions = new ArrayList<>(lists.size());
+            for (Map.Entry<String, ListSummary> entry : lists.entrySet()) {
+                Map<String, Object> list = new HashMap<>(EventExtras.capacityFor(3));
+                list.put(KEY_LIST, entry.getKey());
+                list.put(KEY_SKUS, new ArrayList<>(entry.getValue().skus));
+                list.put(KEY_COUNT, entry.getValue().count);
+                impressions.add(list);
+            }
+
+            params.put(KEY_IMPRESSIONS, impressions);
+            params.put(KEY_IMPRESSION_COUNT, impressionCount);
+        }
+
+        if (!promotions.isEmpty()) {
+            List<Map<String, Object>> promotionList = new ArrayList<>(promotions.size());
+            for (PromotionSummary summary : promotions.values()) {
+                Map<String, Object> promotion = new HashMap<>(EventExtras.capacityFor(6));
+                putIfNotNull(promotion, KEY_ACTION, summary.action);
+                putIfNotNull(promotion, KEY_ID, summary.promotion.getId());
+                putIfNotNull(promotion, KEY_NAME, summary.promotion.getName());
+                putIfNotNull(promotion, KEY_CREATIVE, summary.promotion.getCreative());
+                putIfNotNull(promotion, KEY_POSITION, summary.promotion.getPosition());
+                promotion.put(KEY_COUNT, summary.count);
+                promotionList.add(promotion);
+            }
+
+            params.put(KEY_PROMOTIONS, promotionList);
+            params.put(KEY_PROMOTION_COUNT, promotionCount);
+        }
+
+        return params;
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+}
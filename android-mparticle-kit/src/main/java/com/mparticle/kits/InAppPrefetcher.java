@@ -0,0 +1,110 @@
+package com.mparticle.kits;
+
+import com.blueshift.BlueshiftLogger;
+import com.blueshift.inappmessage.InAppApiCallback;
+
+/**
+ * Fetches in-app messages in the background once the user is identified, so they are already
+ * in the SDK's message store when a screen registers for in-app messages.
+ * <p>
+ * Fetches are rate limited per session: at most {@code maxPerSession} fetches, at least
+ * {@code minIntervalMillis} apart, and never two at once. When a fetch succeeds while a screen
+ * is registered the messages are displayed right away, otherwise the SDK shows them when the
+ * next screen registers.
+ */
+class InAppPrefetcher {
+
+    private static final String TAG = "InAppPrefetcher";
+
+    interface InAppClient {
+        void fetch(InAppApiCallback callback);
+
+        /**
+         * Displays the fetched messages if a screen is registered for in-app messages.
+         */
+        void displayIfRegistered();
+    }
+
+    private final InAppClient client;
+    private final int maxPerSession;
+    private final long minIntervalMillis;
+    private final KitMetrics metrics = KitMetrics.getInstance();
+
+    // guarded by this
+    private int sessionFetches = 0;
+    private long lastFetchMillis = 0;
+    private boolean inFlight = false;
+    private long fetchCount = 0;
+    private long failureCount = 0;
+
+    private final InAppApiCallback callback = new InAppApiCallback() {
+        @Override
+        public void onSuccess() {
+            synchronized (InAppPrefetcher.this) {
+                inFlight = false;
+            }
+
+            client.displayIfRegistered();
+        }
+
+        @Override
+        public void onFailure(int errorCode, String errorMessage) {
+            synchronized (InAppPrefetcher.this) {
+                inFlight = false;
+                failureCount++;
+            }
+        }
+    };
+
+    InAppPrefetcher(InAppClient client, int maxPerSession, long minIntervalMillis) {
+        this.client = client;
+        this.maxPerSession = Math.max(1, maxPerSession);
+        this.minIntervalMillis = Math.max(0, minIntervalMillis);
+    }
+
+    /**
+     * Starts a fetch unless the session's budget is spent, the last fetch is too recent or a
+     * fetch is still running.
+     *
+     * @return true if a fetch was started
+     */
+    boolean prefetch() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (inFlight || sessionFetches >= maxPerSession
+                    || (sessionFetches > 0 && now - lastFetchMillis < minIntervalMillis)) {
+                metrics.increment(KitMetrics.INAPP_PREFETCH_SKIPPED);
+                return false;
+            }
+
+            inFlight = true;
+            sessionFetches++;
+            fetchCount++;
+            lastFetchMillis = now;
+        }
+
+        metrics.increment(KitMetrics.INAPP_PREFETCHED);
+        try {
+            client.fetch(callback);
+        } catch (RuntimeException e) {
+            BlueshiftLogger.e(TAG, e);
+            callback.onFailure(0, e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Gives the new session a fresh fetch budget.
+     */
+    synchronized void startSession() {
+        sessionFetches = 0;
+    }
+
+    synchronized long getFetchCount() {
+        return fetchCount;
+    }
+
+    synchronized long getFailureCount() {
+        return failureCount;
+    }
+}
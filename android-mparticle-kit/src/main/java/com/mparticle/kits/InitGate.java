@@ -0,0 +1,172 @@
+package com.mparticle.kits;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Holds kit work that arrives before the Blueshift SDK is initialized and replays it, in the
+ * order it arrived, once the gate is opened.
+ * <p>
+ * Events and identity updates (identities, consent, push token) are bounded separately, each
+ * to {@code capacity} tasks. When events fill their share the oldest event is dropped to make
+ * room, so an event storm during startup never pushes an identity update out. Identity
+ * updates only drop the oldest identity update, the latest state still goes through.
+ */
+class InitGate {
+
+    private static class Held {
+        final Runnable task;
+        final boolean identity;
+
+        Held(Runnable task, boolean identity) {
+            this.task = task;
+            this.identity = identity;
+        }
+    }
+
+    private final int capacity;
+    private final Object lock = new Object();
+    // guarded by lock
+    private final ArrayDeque<Held> pending = new ArrayDeque<>();
+    private int pendingEvents = 0;
+    private int pendingIdentities = 0;
+    private int droppedCount = 0;
+
+    private volatile boolean open = false;
+
+    InitGate(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Runs the event task right away if the gate is open, buffers it otherwise.
+     *
+     * @param task work to run once the SDK is ready
+     */
+    void runOrBuffer(Runnable task) {
+        runOrBuffer(task, false);
+    }
+
+    /**
+     * Same as {@link #runOrBuffer(Runnable)} for an identity, consent or push token update,
+     * which never makes room for events.
+     */
+    void runOrBufferIdentity(Runnable task) {
+        runOrBuffer(task, true);
+    }
+
+    private void runOrBuffer(Runnable task, boolean identity) {
+        synchronized (lock) {
+            if (!open) {
+                if ((identity ? pendingIdentities : pendingEvents) == capacity) {
+                    dropOldestLocked(identity);
+                }
+
+                pending.addLast(new Held(task, identity));
+                if (identity) {
+                    pendingIdentities++;
+                } else {
+                    pendingEvents++;
+                }
+                return;
+            }
+        }
+
+        task.run();
+    }
+
+    private void dropOldestLocked(boolean identity) {
+        Iterator<Held> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().identity == identity) {
+                iterator.remove();
+                break;
+            }
+        }
+
+        if (identity) {
+            pendingIdentities--;
+        } else {
+            pendingEvents--;
+        }
+        droppedCount++;
+    }
+
+    /**
+     * Replays the buffered tasks on the calling thread and opens the gate. Tasks buffered while
+     * the replay is running are replayed before the gate opens, so the arrival order is kept.
+     *
+     * @return number of replayed tasks
+     */
+    int open() {
+        int replayed = 0;
+
+        while (true) {
+            List<Held> batch;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    open = true;
+                    lock.notifyAll();
+                    return replayed;
+                }
+
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                pendingEvents = 0;
+                pendingIdentities = 0;
+            }
+
+            for (Held held : batch) {
+                held.task.run();
+            }
+
+            replayed += batch.size();
+        }
+    }
+
+    /**
+     * Waits for the gate to open, for at most the given time.
+     *
+     * @return true if the gate is open
+     */
+    boolean awaitOpen(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (lock) {
+            while (!open) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                lock.wait(remaining);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Forgets the buffered tasks. The gate stays as it is.
+     *
+     * @return number of forgotten tasks
+     */
+    int clear() {
+        synchronized (lock) {
+            int cleared = pending.size();
+            pending.clear();
+            pendingEvents = 0;
+            pendingIdentities = 0;
+            return cleared;
+        }
+    }
+
+    int getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+}
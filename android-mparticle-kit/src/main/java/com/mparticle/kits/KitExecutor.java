@@ -0,0 +1,328 @@
+package com.mparticle.kits;
+
+import com.blueshift.BlueshiftLogger;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serial queue that runs every side effect of the kit: SDK calls, disk writes and the
+ * flushes of the batching components.
+ * <p>
+ * Tasks run one at a time, in the order they were submitted, whatever executor does the
+ * work. By default that is a dedicated daemon thread; an app can hand in its own
+ * {@link Executor} (e.g. a shared pool) and the queue is drained on it, a bounded number of
+ * tasks per turn so that a busy kit does not hold a pooled thread for long. Delayed tasks wait
+ * on a timer thread of their own and join the queue when they are due, even while the queue
+ * is busy.
+ * <p>
+ * Tasks submitted with {@link #executePriority(Runnable)} or
+ * {@link #schedulePriority(Runnable, long)} go to a second lane that is always emptied first,
+ * so identify calls do not wait behind a backlog of analytics events. Each lane keeps its own
+ * order.
+ * <p>
+ * After {@link #shutdown()} new and delayed tasks are dropped, tasks already queued still run.
+ * {@link #shutdownNow(Runnable)} discards the queued tasks as well.
+ */
+class KitExecutor implements Executor {
+
+    private static final String TAG = "KitExecutor";
+
+    // tasks run per turn on a shared executor before the queue yields the thread
+    private static final int TASKS_PER_TURN = 64;
+
+    private final Executor delegate;
+    // the dedicated thread, null when the queue is drained on the app's executor
+    private final ScheduledThreadPoolExecutor worker;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private final ArrayDeque<Runnable> priorityQueue = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private boolean draining = false;
+    private boolean shutdown = false;
+
+    private volatile Thread drainingThread;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final Executor priorityLane = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            executePriority(task);
+        }
+    };
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Creates a queue drained on the given executor, or on a dedicated thread if it is null.
+     */
+    static KitExecutor create(Executor executor) {
+        if (executor == null) {
+            ScheduledThreadPoolExecutor worker = newThread("BlueshiftKit-Worker");
+            return new KitExecutor(worker, worker, newThread("BlueshiftKit-Timer"));
+        }
+
+        return new KitExecutor(executor, null, newThread("BlueshiftKit-Timer"));
+    }
+
+    private KitExecutor(Executor delegate, ScheduledThreadPoolExecutor worker, ScheduledThreadPoolExecutor timer) {
+        this.delegate = delegate;
+        this.worker = worker;
+        this.timer = timer;
+
+        // delayed tasks are dropped on shutdown, queued ones are not
+        timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        enqueue(queue, task);
+    }
+
+    /**
+     * Queues the task ahead of every task submitted with {@link #execute(Runnable)}.
+     */
+    void executePriority(Runnable task) {
+        enqueue(priorityQueue, task);
+    }
+
+    /**
+     * @return an {@link Executor} view of the priority lane
+     */
+    Executor priorityLane() {
+        return priorityLane;
+    }
+
+    /**
+     * @return true if called from a task run by this executor
+     */
+    boolean isExecutorThread() {
+        return drainingThread == Thread.currentThread();
+    }
+
+    private void enqueue(ArrayDeque<Runnable> lane, Runnable task) {
+        boolean startDrain;
+
+        synchronized (lock) {
+            if (shutdown) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+
+            lane.add(task);
+
+            startDrain = !draining;
+            draining = true;
+        }
+
+        if (startDrain) {
+            startDrain();
+        }
+    }
+
+    /**
+     * Queues the task after the given delay.
+     */
+    void schedule(Runnable task, long delayMillis) {
+        schedule(queue, task, delayMillis);
+    }
+
+    /**
+     * Queues the task on the priority lane after the given delay.
+     */
+    void schedulePriority(Runnable task, long delayMillis) {
+        schedule(priorityQueue, task, delayMillis);
+    }
+
+    private void schedule(final ArrayDeque<Runnable> lane, final Runnable task, long delayMillis) {
+        try {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // a delayed task due after the shutdown is cancelled, not dropped
+                    if (!isShutdown()) {
+                        enqueue(lane, task);
+                    }
+                }
+            }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shut down
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops accepting tasks and cancels the delayed ones. Tasks already queued still run.
+     */
+    void shutdown() {
+        boolean idle;
+        synchronized (lock) {
+            shutdown = true;
+            idle = !draining;
+        }
+
+        // otherwise the threads stop when the running drain empties the queue, a dedicated
+        // worker has to finish the queued tasks first
+        if (idle) {
+            stopThreads();
+        }
+    }
+
+    /**
+     * Stops accepting tasks and discards the queued and delayed ones. The task running now
+     * completes, then {@code finalTask}, if not null, runs last on this executor.
+     *
+     * @return number of discarded tasks
+     */
+    int shutdownNow(Runnable finalTask) {
+        int discarded;
+        boolean idle;
+
+        synchronized (lock) {
+            shutdown = true;
+
+            discarded = priorityQueue.size() + queue.size();
+            priorityQueue.clear();
+            queue.clear();
+
+            if (finalTask != null) {
+                queue.add(finalTask);
+            }
+
+            idle = !draining;
+            if (idle && finalTask != null) {
+                draining = true;
+            }
+        }
+
+        droppedCount.addAndGet(discarded);
+
+        if (idle) {
+            if (finalTask != null) {
+                startDrain();
+            } else {
+                stopThreads();
+            }
+        }
+
+        return discarded;
+    }
+
+    boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * Waits until every queued task has run. Returns false on timeout.
+     */
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (lock) {
+            while (draining) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) return false;
+                lock.wait(remainingMillis);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return number of tasks dropped because the executor was shut down
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void startDrain() {
+        try {
+            delegate.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            // the app's executor refused the work; keep the tasks and run them here instead
+            BlueshiftLogger.w(TAG, "Executor rejected kit work, running it on the calling thread");
+            drain();
+        }
+    }
+
+    private void drain() {
+        // the dedicated thread is ours, only a shared executor needs to get its thread back
+        int limit = worker != null ? Integer.MAX_VALUE : TASKS_PER_TURN;
+
+        drainingThread = Thread.currentThread();
+
+        for (int i = 0; i < limit; i++) {
+            Runnable task;
+            boolean stop = false;
+            synchronized (lock) {
+                task = priorityQueue.poll();
+                if (task == null) {
+                    task = queue.poll();
+                }
+
+                if (task == null) {
+                    // cleared under the lock, before another thread can start draining
+                    drainingThread = null;
+                    draining = false;
+                    stop = shutdown;
+                    lock.notifyAll();
+                }
+            }
+
+            if (task == null) {
+                if (stop) {
+                    stopThreads();
+                }
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Exception e) {
+                BlueshiftLogger.e(TAG, e);
+            }
+        }
+
+        drainingThread = null;
+
+        // yield the thread and continue on a fresh turn
+        startDrain();
+    }
+
+    /**
+     * Stops the timer, and the dedicated worker if there is one.
+     */
+    private void stopThreads() {
+        timer.shutdown();
+        if (worker != null) {
+            worker.shutdown();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newThread(final String name) {
+        return new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,204 @@
+package com.mparticle.kits;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and latency histograms for the kit's hot paths.
+ * <p>
+ * Counters and histogram buckets live in fixed {@link AtomicLongArray}s, so recording is one
+ * lock-free increment. Recording is off by default: every method checks a volatile flag first
+ * and {@link #startTimer()} skips the clock read, so a disabled registry costs a field read per
+ * call site.
+ */
+final class KitMetrics {
+
+    // counters
+    static final int EVENTS_FORWARDED_MP = 0;
+    static final int EVENTS_FORWARDED_COMMERCE = 1;
+    static final int EVENTS_FORWARDED_SCREEN = 2;
+    static final int EVENTS_DROPPED_MP = 3;
+    static final int EVENTS_DROPPED_COMMERCE = 4;
+    static final int EVENTS_DROPPED_SCREEN = 5;
+    static final int IDENTIFY_REQUESTED = 6;
+    static final int IDENTIFY_ISSUED = 7;
+    static final int USER_INFO_SAVES = 8;
+    static final int PUSH_BLUESHIFT = 9;
+    static final int PUSH_OTHER = 10;
+    static final int PUSH_DISABLED = 11;
+    static final int IDENTIFY_UNCHANGED = 12;
+    static final int EVENTS_DROPPED_BACKPRESSURE = 13;
+    static final int LINK_CACHE_HIT = 14;
+    static final int LINK_CACHE_MISS = 15;
+    static final int LINK_PREFETCHED = 16;
+    static final int INAPP_PREFETCHED = 17;
+    static final int INAPP_PREFETCH_SKIPPED = 18;
+    static final int PUSH_IMAGES_CACHED = 19;
+    static final int PUSH_IMAGES_FETCHED = 20;
+    static final int PUSH_IMAGES_FAILED = 21;
+    static final int CONSENT_BLOCKED = 22;
+    static final int OPT_OUT_DISCARDED = 23;
+    static final int DIAGNOSTICS_FORWARDED = 24;
+    static final int DIAGNOSTICS_SUPPRESSED = 25;
+
+    private static final String[] COUNTER_NAMES = {
+            "events_forwarded.mp",
+            "events_forwarded.commerce",
+            "events_forwarded.screen",
+            "events_dropped.mp",
+            "events_dropped.commerce",
+            "events_dropped.screen",
+            "identify.requested",
+            "identify.issued",
+            "user_info.saves",
+            "push.blueshift",
+            "push.other",
+            "push.disabled",
+            "identify.unchanged",
+            "events_dropped.backpressure",
+            "link_cache.hit",
+            "link_cache.miss",
+            "link_cache.prefetched",
+            "inapp.prefetched",
+            "inapp.prefetch_skipped",
+            "push.images_cached",
+            "push.images_fetched",
+            "push.images_failed",
+            "consent.blocked",
+            "opt_out.discarded",
+            "diagnostics.forwarded",
+            "diagnostics.suppressed"
+    };
+
+    // latency histograms
+    static final int LATENCY_LOG_EVENT = 0;
+    static final int LATENCY_LOG_COMMERCE_EVENT = 1;
+    static final int LATENCY_LOG_SCREEN = 2;
+    static final int LATENCY_USER_ATTRIBUTE = 3;
+    static final int LATENCY_IDENTITY = 4;
+    static final int LATENCY_PUSH_DECISION = 5;
+    static final int LATENCY_LINK_RESOLVE = 6;
+    static final int LATENCY_PUSH_PREPROCESS = 7;
+    static final int LATENCY_PUSH_RECEIVE = 8;
+
+    private static final String[] HISTOGRAM_NAMES = {
+            "latency.log_event",
+            "latency.log_commerce_event",
+            "latency.log_screen",
+            "latency.user_attribute",
+            "latency.identity",
+            "latency.push_decision",
+            "latency.link_resolve",
+            "latency.push_preprocess",
+            "latency.push_receive"
+    };
+
+    // upper bounds of the histogram buckets in microseconds, the last bucket is unbounded
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 50000, 100000, 500000, 1000000, 5000000, 10000000
+    };
+    private static final int BUCKETS_PER_HISTOGRAM = BUCKET_BOUNDS_MICROS.length + 1;
+
+    private static final KitMetrics INSTANCE = new KitMetrics();
+
+    private volatile boolean enabled = false;
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+    private final AtomicLongArray buckets = new AtomicLongArray(HISTOGRAM_NAMES.length * BUCKETS_PER_HISTOGRAM);
+    private final AtomicLongArray sumsMicros = new AtomicLongArray(HISTOGRAM_NAMES.length);
+
+    KitMetrics() {
+    }
+
+    static KitMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void increment(int counter) {
+        if (enabled) {
+            counters.incrementAndGet(counter);
+        }
+    }
+
+    void add(int counter, long delta) {
+        if (enabled) {
+            counters.addAndGet(counter, delta);
+        }
+    }
+
+    /**
+     * @return start time to pass to {@link #recordLatency(int, long)}, or 0 when disabled
+     */
+    long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void recordLatency(int histogram, long startNanos) {
+        if (startNanos == 0 || !enabled) return;
+
+        long micros = (System.nanoTime() - startNanos) / 1000L;
+
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+
+        buckets.incrementAndGet(histogram * BUCKETS_PER_HISTOGRAM + bucket);
+        sumsMicros.addAndGet(histogram, micros);
+    }
+
+    /**
+     * Returns a point-in-time copy of every counter and histogram as flat name/value pairs.
+     * Histograms are exported as {@code <name>.count}, {@code <name>.sum_us} and one
+     * {@code <name>.le_<bound>us} entry per bucket, plus {@code <name>.le_inf}.
+     */
+    Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            snapshot.put(COUNTER_NAMES[i], counters.get(i));
+        }
+
+        for (int h = 0; h < HISTOGRAM_NAMES.length; h++) {
+            String name = HISTOGRAM_NAMES[h];
+
+            long count = 0;
+            for (int b = 0; b < BUCKETS_PER_HISTOGRAM; b++) {
+                long value = buckets.get(h * BUCKETS_PER_HISTOGRAM + b);
+                count += value;
+
+                String bound = b < BUCKET_BOUNDS_MICROS.length ? BUCKET_BOUNDS_MICROS[b] + "us" : "inf";
+                snapshot.put(name + ".le_" + bound, value);
+            }
+
+            snapshot.put(name + ".count", count);
+            snapshot.put(name + ".sum_us", sumsMicros.get(h));
+        }
+
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+
+        for (int i = 0; i < sumsMicros.length(); i++) {
+            sumsMicros.set(i, 0);
+        }
+    }
+}
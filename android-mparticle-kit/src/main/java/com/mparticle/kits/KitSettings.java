@@ -0,0 +1,360 @@
+package com.mparticle.kits;
+
+import com.blueshift.BlueshiftLogger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, typed view of the kit settings delivered by mParticle.
+ * <p>
+ * The raw strings are copied once; each value is parsed and validated the first time it is
+ * read and remembered after that, so settings the kit never looks at cost nothing. A value
+ * that does not parse, or is out of range, falls back to its default with a warning. Switches
+ * read like {@link Boolean#parseBoolean(String)}, as they always have: a missing one keeps its
+ * default, any value other than "true" turns it off.
+ * A new snapshot is built when mParticle delivers the settings again.
+ */
+final class KitSettings {
+
+    private static final String TAG = "BlueshiftKit";
+
+    static final String EVENT_API_KEY = "eventApiKey";
+    static final String SHOULD_LOG_MP_EVENTS = "blueshift_should_log_mp_events";
+    static final String SHOULD_LOG_USER_EVENTS = "blueshift_should_log_user_events";
+    static final String SHOULD_LOG_COMMERCE_EVENTS = "blueshift_should_log_commerce_events";
+    static final String SHOULD_LOG_SCREEN_VIEW_EVENTS = "blueshift_should_log_screen_view_events";
+    static final String MAP_PRODUCT_VIEWS = "blueshift_map_product_views";
+    static final String IDENTIFY_COALESCE_WINDOW_MS = "blueshift_identify_coalesce_window_ms";
+    static final String ASYNC_INIT = "blueshift_async_init";
+    static final String EVENT_BATCH_SIZE = "blueshift_event_batch_size";
+    static final String EVENT_BATCH_INTERVAL_MS = "blueshift_event_batch_interval_ms";
+    static final String EVENT_SDK_BATCHING = "blueshift_event_sdk_batching";
+    static final String EVENT_ALLOWLIST = "blueshift_event_allowlist";
+    static final String EVENT_DENYLIST = "blueshift_event_denylist";
+    static final String EVENT_SAMPLING = "blueshift_event_sampling";
+    static final String STRIP_ATTRIBUTE_KEYS = "blueshift_strip_attribute_keys";
+    static final String EVENT_JOURNAL_ENABLED = "blueshift_event_journal_enabled";
+    static final String EVENT_JOURNAL_MAX_BYTES = "blueshift_event_journal_max_bytes";
+    static final String SHOULD_LOG_IMPRESSIONS = "blueshift_should_log_impressions";
+    static final String IMPRESSION_WINDOW_MS = "blueshift_impression_window_ms";
+    static final String QUEUE_CAPACITY = "blueshift_queue_capacity";
+    static final String QUEUE_POLICY = "blueshift_queue_policy";
+    static final String PRIORITY_EVENTS = "blueshift_priority_events";
+    static final String PREFETCH_PUSH_LINKS = "blueshift_prefetch_push_links";
+    static final String PUSH_IMAGE_PREFETCH = "blueshift_push_image_prefetch";
+    static final String PUSH_IMAGE_BUDGET_MS = "blueshift_push_image_budget_ms";
+    static final String INAPP_PREFETCH = "blueshift_inapp_prefetch";
+    static final String INAPP_PREFETCH_MAX_PER_SESSION = "blueshift_inapp_prefetch_max_per_session";
+    static final String INAPP_PREFETCH_MIN_INTERVAL_MS = "blueshift_inapp_prefetch_min_interval_ms";
+    static final String CONSENT_EVENT_PURPOSES = "blueshift_consent_event_purposes";
+    static final String CONSENT_IDENTIFY_PURPOSES = "blueshift_consent_identify_purposes";
+    static final String CONSENT_PUSH_PURPOSES = "blueshift_consent_push_purposes";
+    static final String CONSENT_RESPECT_CCPA = "blueshift_consent_respect_ccpa";
+    static final String FORWARD_ERRORS = "blueshift_forward_errors";
+    static final String ERROR_MAX_PER_MINUTE = "blueshift_error_max_per_minute";
+    static final String BREADCRUMB_CAPACITY = "blueshift_breadcrumb_capacity";
+
+    static final long DEFAULT_IDENTIFY_COALESCE_WINDOW_MS = 1000;
+    static final int DEFAULT_EVENT_BATCH_SIZE = 1;
+    static final long DEFAULT_EVENT_BATCH_INTERVAL_MS = 10000;
+    static final long DEFAULT_EVENT_JOURNAL_MAX_BYTES = 512 * 1024;
+    static final long DEFAULT_IMPRESSION_WINDOW_MS = 10000;
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    static final int DEFAULT_INAPP_PREFETCH_MAX_PER_SESSION = 3;
+    static final long DEFAULT_INAPP_PREFETCH_MIN_INTERVAL_MS = 60000;
+    static final long DEFAULT_PUSH_IMAGE_BUDGET_MS = 5000;
+    static final int DEFAULT_ERROR_MAX_PER_MINUTE = 3;
+    static final int DEFAULT_BREADCRUMB_CAPACITY = 20;
+
+    private static final int MAX_EVENT_BATCH_SIZE = 1000;
+    private static final int MAX_QUEUE_CAPACITY = 100000;
+    private static final int MAX_INAPP_PREFETCH_PER_SESSION = 100;
+    // FCM gives onMessageReceived about 20 seconds, the SDK needs some of them too
+    private static final long MAX_PUSH_IMAGE_BUDGET_MS = 15000;
+    private static final int MAX_ERROR_MAX_PER_MINUTE = 60;
+    private static final int MAX_BREADCRUMB_CAPACITY = 100;
+
+    static final KitSettings EMPTY = new KitSettings(null);
+
+    private final Map<String, String> values;
+
+    // parsed values by key, filled on first read; the map is only ever read under its lock
+    private final Map<String, Object> parsed = new HashMap<>();
+
+    KitSettings(Map<String, String> settings) {
+        this.values = settings == null || settings.isEmpty()
+                ? Collections.<String, String>emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(settings));
+    }
+
+    String getApiKey() {
+        return values.get(EVENT_API_KEY);
+    }
+
+    boolean shouldLogMPEvents() {
+        return getBoolean(SHOULD_LOG_MP_EVENTS, false);
+    }
+
+    boolean shouldLogUserEvents() {
+        return getBoolean(SHOULD_LOG_USER_EVENTS, true);
+    }
+
+    boolean shouldLogCommerceEvents() {
+        return getBoolean(SHOULD_LOG_COMMERCE_EVENTS, false);
+    }
+
+    boolean shouldLogScreenViewEvents() {
+        return getBoolean(SHOULD_LOG_SCREEN_VIEW_EVENTS, false);
+    }
+
+    /**
+     * Off by default: renaming product details to Blueshift's "view" event breaks triggers and
+     * segments built on the "view_detail" name.
+     */
+    boolean shouldMapProductViews() {
+        return getBoolean(MAP_PRODUCT_VIEWS, false);
+    }
+
+    /**
+     * Impressions are only summarized while commerce events are forwarded.
+     */
+    boolean shouldLogImpressions() {
+        return shouldLogCommerceEvents() && getBoolean(SHOULD_LOG_IMPRESSIONS, false);
+    }
+
+    boolean isAsyncInit() {
+        return getBoolean(ASYNC_INIT, false);
+    }
+
+    boolean shouldPrefetchPushLinks() {
+        return getBoolean(PREFETCH_PUSH_LINKS, false);
+    }
+
+    boolean shouldPrefetchPushImages() {
+        return getBoolean(PUSH_IMAGE_PREFETCH, false);
+    }
+
+    long getPushImageBudgetMillis() {
+        return getLong(PUSH_IMAGE_BUDGET_MS, DEFAULT_PUSH_IMAGE_BUDGET_MS, 0, MAX_PUSH_IMAGE_BUDGET_MS);
+    }
+
+    boolean shouldPrefetchInAppMessages() {
+        return getBoolean(INAPP_PREFETCH, false);
+    }
+
+    int getInAppPrefetchMaxPerSession() {
+        return (int) getLong(INAPP_PREFETCH_MAX_PER_SESSION, DEFAULT_INAPP_PREFETCH_MAX_PER_SESSION, 1, MAX_INAPP_PREFETCH_PER_SESSION);
+    }
+
+    long getInAppPrefetchMinIntervalMillis() {
+        return getLong(INAPP_PREFETCH_MIN_INTERVAL_MS, DEFAULT_INAPP_PREFETCH_MIN_INTERVAL_MS, 0, Long.MAX_VALUE);
+    }
+
+    boolean shouldForwardErrors() {
+        return getBoolean(FORWARD_ERRORS, false);
+    }
+
+    int getErrorMaxPerMinute() {
+        return (int) getLong(ERROR_MAX_PER_MINUTE, DEFAULT_ERROR_MAX_PER_MINUTE, 1, MAX_ERROR_MAX_PER_MINUTE);
+    }
+
+    int getBreadcrumbCapacity() {
+        return (int) getLong(BREADCRUMB_CAPACITY, DEFAULT_BREADCRUMB_CAPACITY, 1, MAX_BREADCRUMB_CAPACITY);
+    }
+
+    boolean isEventJournalEnabled() {
+        return getBoolean(EVENT_JOURNAL_ENABLED, false);
+    }
+
+    long getIdentifyCoalesceWindowMillis() {
+        return getLong(IDENTIFY_COALESCE_WINDOW_MS, DEFAULT_IDENTIFY_COALESCE_WINDOW_MS, 0, Long.MAX_VALUE);
+    }
+
+    int getEventBatchSize() {
+        return (int) getLong(EVENT_BATCH_SIZE, DEFAULT_EVENT_BATCH_SIZE, 1, MAX_EVENT_BATCH_SIZE);
+    }
+
+    long getEventBatchIntervalMillis() {
+        return getLong(EVENT_BATCH_INTERVAL_MS, DEFAULT_EVENT_BATCH_INTERVAL_MS, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Off by default, the kit batch is then the only buffering. When on, the events of a
+     * flushed kit batch are also left to the SDK's own batching: fewer requests, but an event
+     * can wait for the SDK's batch interval on top of the kit's. Priority events never are.
+     */
+    boolean shouldUseSdkBatching() {
+        return getBoolean(EVENT_SDK_BATCHING, false);
+    }
+
+    long getEventJournalMaxBytes() {
+        return getLong(EVENT_JOURNAL_MAX_BYTES, DEFAULT_EVENT_JOURNAL_MAX_BYTES, 1, Long.MAX_VALUE);
+    }
+
+    long getImpressionWindowMillis() {
+        return getLong(IMPRESSION_WINDOW_MS, DEFAULT_IMPRESSION_WINDOW_MS, 0, Long.MAX_VALUE);
+    }
+
+    int getQueueCapacity() {
+        return (int) getLong(QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY, 1, MAX_QUEUE_CAPACITY);
+    }
+
+    ForwardingQueue.Policy getQueuePolicy() {
+        synchronized (parsed) {
+            ForwardingQueue.Policy policy = (ForwardingQueue.Policy) parsed.get(QUEUE_POLICY);
+            if (policy == null) {
+                String value = values.get(QUEUE_POLICY);
+                policy = ForwardingQueue.Policy.parse(value, ForwardingQueue.Policy.DROP_OLDEST);
+                if (!KitUtils.isEmpty(value) && !policy.name().equalsIgnoreCase(value.trim())) {
+                    warnInvalid(QUEUE_POLICY, value, policy);
+                }
+                parsed.put(QUEUE_POLICY, policy);
+            }
+            return policy;
+        }
+    }
+
+    /**
+     * @return the event filter, or null when no rule is set
+     */
+    EventFilter getEventFilter() {
+        synchronized (parsed) {
+            if (!parsed.containsKey(EVENT_ALLOWLIST)) {
+                EventFilter filter = EventFilter.parse(
+                        values.get(EVENT_ALLOWLIST),
+                        values.get(EVENT_DENYLIST),
+                        values.get(EVENT_SAMPLING),
+                        values.get(STRIP_ATTRIBUTE_KEYS)
+                );
+                parsed.put(EVENT_ALLOWLIST, filter.isEmpty() ? null : filter);
+            }
+            return (EventFilter) parsed.get(EVENT_ALLOWLIST);
+        }
+    }
+
+    /**
+     * @return the priority event names, or null when none are set
+     */
+    NameMatcher getPriorityEvents() {
+        synchronized (parsed) {
+            if (!parsed.containsKey(PRIORITY_EVENTS)) {
+                NameMatcher matcher = NameMatcher.parse(values.get(PRIORITY_EVENTS));
+                parsed.put(PRIORITY_EVENTS, matcher.isEmpty() ? null : matcher);
+            }
+            return (NameMatcher) parsed.get(PRIORITY_EVENTS);
+        }
+    }
+
+    /**
+     * @return the consent requirements, {@link ConsentGate#NONE} when none are set
+     */
+    ConsentGate getConsentGate() {
+        boolean respectCcpa = getBoolean(CONSENT_RESPECT_CCPA, false);
+
+        synchronized (parsed) {
+            ConsentGate gate = (ConsentGate) parsed.get(CONSENT_EVENT_PURPOSES);
+            if (gate == null) {
+                gate = ConsentGate.parse(
+                        values.get(CONSENT_EVENT_PURPOSES),
+                        values.get(CONSENT_IDENTIFY_PURPOSES),
+                        values.get(CONSENT_PUSH_PURPOSES),
+                        respectCcpa
+                );
+                parsed.put(CONSENT_EVENT_PURPOSES, gate);
+            }
+            return gate;
+        }
+    }
+
+    /**
+     * @return true if the event filter and the priority events match the given settings
+     */
+    boolean hasSameRoutingAs(KitSettings other) {
+        return same(other, EVENT_ALLOWLIST) && same(other, EVENT_DENYLIST) && same(other, EVENT_SAMPLING)
+                && same(other, STRIP_ATTRIBUTE_KEYS) && same(other, PRIORITY_EVENTS);
+    }
+
+    private boolean same(KitSettings other, String key) {
+        String value = values.get(key);
+        String otherValue = other.values.get(key);
+        return value == null ? otherValue == null : value.equals(otherValue);
+    }
+
+    /**
+     * @return the raw settings, one per line and sorted by key, with the API key masked
+     */
+    String describe() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("mParticle settings\n");
+        builder.append("{");
+
+        boolean first = true;
+        for (Map.Entry<String, String> entry : new TreeMap<>(values).entrySet()) {
+            builder.append(first ? "\n\t" : ",\n\t");
+            first = false;
+
+            String value = EVENT_API_KEY.equals(entry.getKey()) ? mask(entry.getValue()) : entry.getValue();
+            builder.append("\"").append(entry.getKey()).append("\" : \"").append(value).append("\"");
+        }
+
+        builder.append("\n}");
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof KitSettings && values.equals(((KitSettings) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) {
+        synchronized (parsed) {
+            Boolean value = (Boolean) parsed.get(key);
+            if (value == null) {
+                value = values.containsKey(key) ? Boolean.parseBoolean(values.get(key)) : defaultValue;
+                parsed.put(key, value);
+            }
+            return value;
+        }
+    }
+
+    private long getLong(String key, long defaultValue, long min, long max) {
+        synchronized (parsed) {
+            Long value = (Long) parsed.get(key);
+            if (value == null) {
+                value = parseLong(key, values.get(key), defaultValue, min, max);
+                parsed.put(key, value);
+            }
+            return value;
+        }
+    }
+
+    private static long parseLong(String key, String value, long defaultValue, long min, long max) {
+        if (value == null) return defaultValue;
+
+        try {
+            long parsedValue = Long.parseLong(value.trim());
+            if (parsedValue >= min && parsedValue <= max) return parsedValue;
+        } catch (NumberFormatException ignored) {
+        }
+
+        warnInvalid(key, value, defaultValue);
+        return defaultValue;
+    }
+
+    private static void warnInvalid(String key, String value, Object defaultValue) {
+        BlueshiftLogger.w(TAG, "Invalid value \"" + value + "\" for setting \"" + key + "\". Using " + defaultValue + ".");
+    }
+
+    private static String mask(String value) {
+        if (value == null || value.length() <= 4) return "****";
+        return "****" + value.substring(value.length() - 4);
+    }
+}
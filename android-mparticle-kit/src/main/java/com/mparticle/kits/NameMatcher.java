@@ -0,0 +1,104 @@
+package com.mparticle.kits;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Matches names against a list of exact names and prefixes, compiled once from a comma
+ * separated pattern list such as {@code "app_open, debug_*"}. A trailing {@code *} makes the
+ * entry a prefix. Exact names are looked up in a hash set and prefixes in a trie, so a match
+ * costs at most one walk over the name.
+ */
+class NameMatcher {
+
+    private static final char WILDCARD = '*';
+
+    private final Set<String> exactNames = new HashSet<>();
+    private final TrieNode prefixes = new TrieNode();
+    private boolean hasPrefixes = false;
+
+    static NameMatcher parse(String patterns) {
+        NameMatcher matcher = new NameMatcher();
+
+        if (patterns != null) {
+            for (String pattern : patterns.split(",")) {
+                matcher.add(pattern.trim());
+            }
+        }
+
+        return matcher;
+    }
+
+    private void add(String pattern) {
+        if (pattern.isEmpty()) return;
+
+        if (pattern.charAt(pattern.length() - 1) == WILDCARD) {
+            String prefix = pattern.substring(0, pattern.length() - 1);
+
+            TrieNode node = prefixes;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+
+            node.terminal = true;
+            hasPrefixes = true;
+        } else {
+            exactNames.add(pattern);
+        }
+    }
+
+    boolean isEmpty() {
+        return exactNames.isEmpty() && !hasPrefixes;
+    }
+
+    boolean hasPrefixes() {
+        return hasPrefixes;
+    }
+
+    Set<String> getExactNames() {
+        return exactNames;
+    }
+
+    boolean matches(String name) {
+        if (name == null) return false;
+
+        if (exactNames.contains(name)) return true;
+
+        if (hasPrefixes) {
+            TrieNode node = prefixes;
+            if (node.terminal) return true;
+
+            for (int i = 0; i < name.length(); i++) {
+                node = node.child(name.charAt(i));
+                if (node == null) return false;
+                if (node.terminal) return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static class TrieNode {
+        private HashMap<Character, TrieNode> children;
+        private boolean terminal = false;
+
+        TrieNode child(char c) {
+            return children != null ? children.get(c) : null;
+        }
+
+        TrieNode childOrCreate(char c) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+
+            TrieNode node = children.get(c);
+            if (node == null) {
+                node = new TrieNode();
+                children.put(c, node);
+            }
+
+            return node;
+        }
+    }
+}
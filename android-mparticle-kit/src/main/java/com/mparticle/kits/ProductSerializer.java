@@ -0,0 +1,149 @@
+package com.mparticle.kits;
+
+import com.mparticle.commerce.Product;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns mParticle {@link Product}s into the product maps of a Blueshift commerce payload.
+ * <p>
+ * Serialized products are cached by SKU in a small LRU cache. A cached entry is only reused
+ * for a product whose fields and custom attributes are all equal to the ones it was built
+ * from, so a product mutated since, or another product with the same SKU, gets a map of its
+ * own. Comparing allocates nothing, so large carts and repeated impressions do not rebuild
+ * the same maps. The returned maps are unmodifiable because they are shared between events.
+ */
+class ProductSerializer {
+
+    static final String KEY_SKU = "sku";
+    static final String KEY_NAME = "name";
+    static final String KEY_PRICE = "price";
+    static final String KEY_QUANTITY = "quantity";
+    static final String KEY_CATEGORY = "category";
+    static final String KEY_BRAND = "brand";
+    static final String KEY_VARIANT = "variant";
+    static final String KEY_COUPON = "coupon";
+    static final String KEY_POSITION = "position";
+
+    private static final int DEFAULT_CACHE_SIZE = 512;
+
+    private static class CachedProduct {
+        final String name;
+        final double unitPrice;
+        final double quantity;
+        final String category;
+        final String brand;
+        final String variant;
+        final String couponCode;
+        final Integer position;
+        // copied, the product's own map may change after it was serialized
+        final Map<String, String> attributes;
+        final Map<String, Object> serialized;
+
+        CachedProduct(Product source, Map<String, Object> serialized) {
+            this.name = source.getName();
+            this.unitPrice = source.getUnitPrice();
+            this.quantity = source.getQuantity();
+            this.category = source.getCategory();
+            this.brand = source.getBrand();
+            this.variant = source.getVariant();
+            this.couponCode = source.getCouponCode();
+            this.position = source.getPosition();
+            Map<String, String> sourceAttributes = source.getCustomAttributes();
+            this.attributes = sourceAttributes != null && !sourceAttributes.isEmpty()
+                    ? new HashMap<>(sourceAttributes) : Collections.<String, String>emptyMap();
+            this.serialized = serialized;
+        }
+
+        boolean matches(Product product) {
+            Map<String, String> productAttributes = product.getCustomAttributes();
+            return Double.compare(unitPrice, product.getUnitPrice()) == 0
+                    && Double.compare(quantity, product.getQuantity()) == 0
+                    && equal(name, product.getName())
+                    && equal(category, product.getCategory())
+                    && equal(brand, product.getBrand())
+                    && equal(variant, product.getVariant())
+                    && equal(couponCode, product.getCouponCode())
+                    && equal(position, product.getPosition())
+                    && (productAttributes != null ? attributes.equals(productAttributes) : attributes.isEmpty());
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final LinkedHashMap<String, CachedProduct> cache;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    ProductSerializer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    ProductSerializer(final int cacheSize) {
+        this.cache = new LinkedHashMap<String, CachedProduct>(EventExtras.capacityFor(cacheSize), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedProduct> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    synchronized Map<String, Object> serialize(Product product) {
+        String sku = product.getSku();
+        if (sku == null) {
+            return build(product);
+        }
+
+        CachedProduct entry = cache.get(sku);
+        if (entry != null && entry.matches(product)) {
+            hitCount++;
+            return entry.serialized;
+        }
+
+        missCount++;
+        Map<String, Object> serialized = build(product);
+        cache.put(sku, new CachedProduct(product, serialized));
+        return serialized;
+    }
+
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static Map<String, Object> build(Product product) {
+        Map<String, String> attributes = product.getCustomAttributes();
+        int attributeCount = attributes != null ? attributes.size() : 0;
+
+        HashMap<String, Object> map = new HashMap<>(EventExtras.capacityFor(attributeCount + 9));
+        if (attributeCount > 0) {
+            map.putAll(attributes);
+        }
+
+        putIfNotNull(map, KEY_SKU, product.getSku());
+        putIfNotNull(map, KEY_NAME, product.getName());
+        map.put(KEY_PRICE, product.getUnitPrice());
+        map.put(KEY_QUANTITY, product.getQuantity());
+        putIfNotNull(map, KEY_CATEGORY, product.getCategory());
+        putIfNotNull(map, KEY_BRAND, product.getBrand());
+        putIfNotNull(map, KEY_VARIANT, product.getVariant());
+        putIfNotNull(map, KEY_COUPON, product.getCouponCode());
+        putIfNotNull(map, KEY_POSITION, product.getPosition());
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+}
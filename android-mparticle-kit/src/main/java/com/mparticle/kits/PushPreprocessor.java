@@ -0,0 +1,323 @@
+package com.mparticle.kits;
+
+import com.blueshift.BlueshiftLogger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warms the image caches for a Blueshift push before the SDK builds the notification.
+ * <p>
+ * The string extras of the push are scanned once for image urls (values of keys ending in
+ * {@code image_url} or {@code icon_url}). The images are downloaded in parallel on the given
+ * executor, downsampled to {@code maxDimension} and stored in a disk cache capped at
+ * {@code maxCacheBytes}, oldest files evicted first. The caller waits at most
+ * {@code budgetMillis} for them, the others finish in the background for the next push that
+ * uses them.
+ * <p>
+ * The push keeps its original urls and the SDK still loads the images itself; there is no
+ * supported way to hand it a bitmap. The prefetch only warms caches: the downloads go through
+ * the app's HTTP response cache, if it installed one, and an image already in this cache is
+ * not downloaded again for the next push.
+ */
+class PushPreprocessor {
+
+    private static final String TAG = "PushPreprocessor";
+
+    private static final String[] IMAGE_KEY_SUFFIXES = {"image_url\"", "icon_url\""};
+    private static final int MAX_IMAGES = 10;
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final long MAX_DOWNLOAD_BYTES = 5 * 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".download";
+
+    interface Downsampler {
+        /**
+         * Writes the image in {@code source} to {@code target}, scaled down so that neither
+         * side exceeds {@code maxDimension}.
+         *
+         * @return false if the source is not a readable image
+         */
+        boolean downsample(File source, File target, int maxDimension) throws IOException;
+    }
+
+    private final File cacheDir;
+    private final long maxCacheBytes;
+    private final int maxDimension;
+    private final long budgetMillis;
+    private final Executor executor;
+    private final Downsampler downsampler;
+    private final KitMetrics metrics = KitMetrics.getInstance();
+
+    // downloads in progress by url, guarded by itself
+    private final Map<String, FutureTask<File>> downloads = new HashMap<>();
+
+    PushPreprocessor(File cacheDir, long maxCacheBytes, int maxDimension, long budgetMillis,
+                     Executor executor, Downsampler downsampler) {
+        this.cacheDir = cacheDir;
+        this.maxCacheBytes = maxCacheBytes;
+        this.maxDimension = maxDimension;
+        this.budgetMillis = Math.max(0, budgetMillis);
+        this.executor = executor;
+        this.downsampler = downsampler;
+    }
+
+    long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Prefetches the images referenced by the extras. Blocks for at most the budget, or
+     * {@code maxWaitMillis} if that is shorter.
+     *
+     * @param extras string extras of the push
+     * @param maxWaitMillis what is left of the caller's own time budget
+     * @return number of images in the cache by the end of the wait
+     */
+    int process(Map<String, String> extras, long maxWaitMillis) {
+        long deadline = System.currentTimeMillis() + Math.min(budgetMillis, Math.max(0, maxWaitMillis));
+
+        Map<String, FutureTask<File>> images = new LinkedHashMap<>();
+        for (String value : extras.values()) {
+            for (String rawUrl : findImageUrls(value)) {
+                String url = rawUrl.replace("\\/", "/");
+                if (images.size() < MAX_IMAGES && !images.containsKey(url)) {
+                    images.put(url, fetch(url));
+                }
+            }
+        }
+
+        int ready = 0;
+        for (FutureTask<File> image : images.values()) {
+            if (await(image, deadline) != null) {
+                ready++;
+            }
+        }
+
+        return ready;
+    }
+
+    /**
+     * @return the urls, as written in the JSON text, of the string values whose key ends in
+     * {@code image_url} or {@code icon_url}
+     */
+    static List<String> findImageUrls(String json) {
+        List<String> urls = new ArrayList<>();
+        if (json == null) return urls;
+
+        for (String suffix : IMAGE_KEY_SUFFIXES) {
+            int index = json.indexOf(suffix);
+            while (index >= 0) {
+                int valueStart = json.indexOf('"', skipColon(json, index + suffix.length()));
+                if (valueStart < 0) break;
+
+                int valueEnd = json.indexOf('"', valueStart + 1);
+                if (valueEnd < 0) break;
+
+                String url = json.substring(valueStart + 1, valueEnd);
+                if (url.startsWith("http:") || url.startsWith("https:")) {
+                    urls.add(url);
+                }
+
+                index = json.indexOf(suffix, valueEnd);
+            }
+        }
+
+        return urls;
+    }
+
+    private static int skipColon(String json, int index) {
+        while (index < json.length() && (json.charAt(index) == ' ' || json.charAt(index) == ':')) {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the cached image, a download already in progress or a new one
+     */
+    private FutureTask<File> fetch(final String url) {
+        final File target = new File(cacheDir, cacheKey(url));
+
+        synchronized (downloads) {
+            FutureTask<File> download = downloads.get(url);
+            if (download != null) return download;
+
+            if (target.exists()) {
+                metrics.increment(KitMetrics.PUSH_IMAGES_CACHED);
+                // most recently used files are evicted last
+                target.setLastModified(System.currentTimeMillis());
+
+                FutureTask<File> cached = new FutureTask<>(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }, target);
+                cached.run();
+                return cached;
+            }
+
+            download = new FutureTask<>(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        download(url, target);
+                        metrics.increment(KitMetrics.PUSH_IMAGES_FETCHED);
+                    } catch (IOException e) {
+                        metrics.increment(KitMetrics.PUSH_IMAGES_FAILED);
+                        BlueshiftLogger.w(TAG, "Could not prefetch " + url + ": " + e.getMessage());
+                        throw new IllegalStateException(e);
+                    } finally {
+                        synchronized (downloads) {
+                            downloads.remove(url);
+                        }
+                    }
+                }
+            }, target);
+
+            downloads.put(url, download);
+            try {
+                executor.execute(download);
+            } catch (RejectedExecutionException e) {
+                // the pool was shut down by an opt-out, the push goes out with the original url
+                downloads.remove(url);
+                download.cancel(false);
+            }
+            return download;
+        }
+    }
+
+    private static File await(FutureTask<File> task, long deadline) {
+        try {
+            long remaining = deadline - System.currentTimeMillis();
+            return remaining > 0 ? task.get(remaining, TimeUnit.MILLISECONDS) : (task.isDone() ? task.get() : null);
+        } catch (TimeoutException | ExecutionException | CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void download(String url, File target) throws IOException {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Cannot create " + cacheDir);
+        }
+
+        File temp = new File(cacheDir, target.getName() + TEMP_SUFFIX);
+        File scaled = new File(cacheDir, target.getName() + ".scaled" + TEMP_SUFFIX);
+        InputStream in = null;
+        OutputStream out = null;
+
+        try {
+            URLConnection connection = new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+
+            in = connection.getInputStream();
+            out = new FileOutputStream(temp);
+
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > MAX_DOWNLOAD_BYTES) throw new IOException("Image too large");
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            out = null;
+
+            // written aside and renamed, so a cached file is always complete
+            if (!downsampler.downsample(temp, scaled, maxDimension)) {
+                throw new IOException("Not an image");
+            }
+            if (!scaled.renameTo(target)) {
+                throw new IOException("Cannot write " + target);
+            }
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            temp.delete();
+            scaled.delete();
+        }
+
+        trimCache();
+    }
+
+    /**
+     * Deletes the least recently used images until the cache fits in its cap.
+     */
+    private void trimCache() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) return;
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxCacheBytes) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : files) {
+            if (total <= maxCacheBytes) break;
+            if (file.getName().endsWith(TEMP_SUFFIX)) continue;
+
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static String cacheKey(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
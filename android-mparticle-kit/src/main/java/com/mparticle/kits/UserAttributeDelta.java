@@ -0,0 +1,129 @@
+package com.mparticle.kits;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the mParticle user attribute changes that Blueshift has not seen yet.
+ * <p>
+ * Every attribute callback is folded into a delta map, keyed by the Blueshift attribute name,
+ * with the latest value winning. {@link #drainTo(Map)} moves the delta into an identify payload
+ * and remembers the values it shipped, so setting an attribute to the value it already has (as
+ * {@code onSetAllUserAttributes} does for the whole profile) adds nothing to the next call.
+ * <p>
+ * The identify payload also carries the keys the Blueshift SDK fills in itself, so mParticle
+ * keys are never shipped as they are: the reserved profile attributes Blueshift knows are
+ * renamed to its keys, every other attribute is prefixed with {@link #KEY_PREFIX}. A removed
+ * attribute is shipped as an empty string, a null value would be left out of the payload.
+ */
+class UserAttributeDelta {
+
+    static final String KEY_PREFIX = "mp_";
+    static final String REMOVED = "";
+
+    private static final Map<String, String> PROFILE_KEYS = new HashMap<>();
+
+    static {
+        PROFILE_KEYS.put("$FirstName", "firstname");
+        PROFILE_KEYS.put("$LastName", "lastname");
+        PROFILE_KEYS.put("$Gender", "gender");
+        PROFILE_KEYS.put("$Mobile", "phone_number");
+    }
+
+    // guarded by this
+    private final Map<String, Object> shipped = new HashMap<>();
+    private final Map<String, Object> pending = new HashMap<>();
+
+    /**
+     * @return the key the attribute is shipped under
+     */
+    static String blueshiftKey(String key) {
+        String profileKey = PROFILE_KEYS.get(key);
+        if (profileKey != null) return profileKey;
+
+        return KEY_PREFIX + (key.startsWith("$") ? key.substring(1) : key);
+    }
+
+    synchronized void set(String key, Object value) {
+        if (key == null) return;
+
+        key = blueshiftKey(key);
+        if (value == null) {
+            value = REMOVED;
+        } else if (value instanceof List) {
+            // the caller may keep changing its list
+            value = new ArrayList<>((List<?>) value);
+        }
+
+        if (shipped.containsKey(key) && equals(shipped.get(key), value)) {
+            pending.remove(key);
+        } else {
+            pending.put(key, value);
+        }
+    }
+
+    void remove(String key) {
+        set(key, REMOVED);
+    }
+
+    synchronized void setAll(Map<String, String> attributes, Map<String, List<String>> attributeLists) {
+        if (attributes != null) {
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (attributeLists != null) {
+            for (Map.Entry<String, List<String>> entry : attributeLists.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    synchronized boolean hasChanges() {
+        return !pending.isEmpty();
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Moves the pending changes into the given payload and marks them shipped.
+     *
+     * @return number of attributes added to the payload
+     */
+    synchronized int drainTo(Map<String, Object> payload) {
+        int count = pending.size();
+        if (count == 0) return 0;
+
+        payload.putAll(pending);
+
+        for (Map.Entry<String, Object> entry : pending.entrySet()) {
+            if (REMOVED.equals(entry.getValue())) {
+                shipped.remove(entry.getKey());
+            } else {
+                shipped.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        pending.clear();
+
+        return count;
+    }
+
+    /**
+     * Forgets the pending changes and which values were shipped, e.g. when another user logs
+     * in: neither belongs to the new user, whose attributes are all sent as they come.
+     */
+    synchronized void reset() {
+        pending.clear();
+        shipped.clear();
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
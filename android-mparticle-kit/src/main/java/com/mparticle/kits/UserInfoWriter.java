@@ -0,0 +1,115 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+
+import com.blueshift.BlueshiftLogger;
+import com.blueshift.model.UserInfo;
+import com.mparticle.MParticle;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a snapshot of the identities the kit copies into {@link UserInfo} and writes them to
+ * disk only when they change.
+ * <p>
+ * Writes happen on the given executor. When several changes arrive before a write runs, they
+ * are merged into one {@link UserInfo#save(Context)} call with the latest values.
+ */
+class UserInfoWriter {
+
+    private static final String TAG = "UserInfoWriter";
+
+    private final BlueshiftHandles handles;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private String email;
+    private String customerId;
+
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private final AtomicLong saveCount = new AtomicLong();
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    UserInfoWriter(BlueshiftHandles handles, Executor executor) {
+        this.handles = handles;
+        this.executor = executor;
+
+        // start from what is already persisted, so the first callback does not rewrite it
+        UserInfo userInfo = handles.userInfo();
+        this.email = userInfo.getEmail();
+        this.customerId = userInfo.getRetailerCustomerId();
+    }
+
+    /**
+     * Copies the email and customer id from the given identities into the snapshot and
+     * schedules a write if either of them changed.
+     *
+     * @param identities user identities sent by mParticle
+     * @return true if the snapshot changed
+     */
+    boolean update(Map<MParticle.IdentityType, String> identities) {
+        if (identities == null) return false;
+
+        String newEmail = identities.get(MParticle.IdentityType.Email);
+        String newCustomerId = identities.get(MParticle.IdentityType.CustomerId);
+
+        synchronized (lock) {
+            if (equals(email, newEmail) && equals(customerId, newCustomerId)) {
+                return false;
+            }
+
+            email = newEmail;
+            customerId = newCustomerId;
+        }
+
+        if (pending.compareAndSet(false, true)) {
+            executor.execute(writeTask);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return number of times the snapshot was written to disk
+     */
+    long getSaveCount() {
+        return saveCount.get();
+    }
+
+    private void write() {
+        // clear the flag first, a change made during the write schedules another one
+        pending.set(false);
+
+        String email;
+        String customerId;
+        synchronized (lock) {
+            email = this.email;
+            customerId = this.customerId;
+        }
+
+        try {
+            UserInfo userInfo = handles.userInfo();
+            userInfo.setEmail(email);
+            userInfo.setRetailerCustomerId(customerId);
+            userInfo.save(handles.getContext());
+
+            saveCount.incrementAndGet();
+            KitMetrics.getInstance().increment(KitMetrics.USER_INFO_SAVES);
+        } catch (Exception e) {
+            BlueshiftLogger.e(TAG, e);
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
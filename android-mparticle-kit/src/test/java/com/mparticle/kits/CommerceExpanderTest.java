@@ -0,0 +1,121 @@
+package com.mparticle.kits;
+
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.TransactionAttributes;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CommerceExpanderTest {
+
+    @Test
+    public void testEventNames() {
+        assertEquals(Product.PURCHASE, CommerceExpander.eventNameFor(Product.PURCHASE, false));
+        assertEquals(Product.DETAIL, CommerceExpander.eventNameFor(Product.DETAIL, false));
+        assertEquals(Product.CLICK, CommerceExpander.eventNameFor(Product.CLICK, false));
+        assertEquals(Product.CHECKOUT_OPTION, CommerceExpander.eventNameFor(Product.CHECKOUT_OPTION, false));
+        assertNull(CommerceExpander.eventNameFor(null, false));
+
+        // only product details are renamed, and only when asked for
+        assertEquals(CommerceExpander.EVENT_VIEW, CommerceExpander.eventNameFor(Product.DETAIL, true));
+        assertEquals(Product.CLICK, CommerceExpander.eventNameFor(Product.CLICK, true));
+    }
+
+    @Test
+    public void testPurchasePayload() {
+        Product shoes = new Product.Builder("Shoes", "sku-1", 50.0).quantity(2).build();
+        Product socks = new Product.Builder("Socks", "sku-2", 5.0).build();
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("channel", "app");
+
+        CommerceEvent event = new CommerceEvent.Builder(Product.PURCHASE, shoes)
+                .addProduct(socks)
+                .transactionAttributes(new TransactionAttributes("order-1").setTax(1.5))
+                .customAttributes(attributes)
+                .currency("USD")
+                .build();
+
+        HashMap<String, Object> params = new CommerceExpander(new ProductSerializer()).buildParams(event);
+
+        assertEquals("app", params.get("channel"));
+        assertEquals("order-1", params.get(CommerceExpander.KEY_ORDER_ID));
+        assertEquals(1.5, params.get(CommerceExpander.KEY_TAX));
+        assertEquals("USD", params.get(CommerceExpander.KEY_CURRENCY));
+        // no revenue in the transaction, so it is summed from the products
+        assertEquals(105.0, params.get(CommerceExpander.KEY_REVENUE));
+        assertNull(params.get(CommerceExpander.KEY_PRODUCT_ID));
+
+        List<?> products = (List<?>) params.get(CommerceExpander.KEY_PRODUCTS);
+        assertEquals(2, products.size());
+
+        Map<?, ?> first = (Map<?, ?>) products.get(0);
+        assertEquals("sku-1", first.get(ProductSerializer.KEY_SKU));
+        assertEquals(50.0, first.get(ProductSerializer.KEY_PRICE));
+        assertEquals(2.0, first.get(ProductSerializer.KEY_QUANTITY));
+    }
+
+    @Test
+    public void testSingleProductHasProductId() {
+        Product product = new Product.Builder("Shoes", "sku-1", 50.0).build();
+        CommerceEvent event = new CommerceEvent.Builder(Product.ADD_TO_CART, product).build();
+
+        HashMap<String, Object> params = new CommerceExpander(new ProductSerializer()).buildParams(event);
+
+        assertEquals("sku-1", params.get(CommerceExpander.KEY_PRODUCT_ID));
+    }
+
+    @Test
+    public void testProductCacheMatchesByValue() {
+        ProductSerializer serializer = new ProductSerializer(2);
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("size", "42");
+        Product shoes = new Product.Builder("Shoes", "sku-1", 50.0).customAttributes(attributes).build();
+
+        Map<String, Object> first = serializer.serialize(shoes);
+        assertSame(first, serializer.serialize(shoes));
+        assertSame(first, serializer.serialize(
+                new Product.Builder("Shoes", "sku-1", 50.0).customAttributes(new HashMap<>(attributes)).build()));
+
+        Map<String, Object> repriced = serializer.serialize(new Product.Builder("Shoes", "sku-1", 40.0).build());
+        assertNotSame(first, repriced);
+        assertEquals(40.0, repriced.get(ProductSerializer.KEY_PRICE));
+
+        // a product changed after it was serialized is not sent with its old values
+        Map<String, Object> before = serializer.serialize(shoes);
+        attributes.put("size", "43");
+        Map<String, Object> after = serializer.serialize(shoes);
+        assertNotSame(before, after);
+        assertEquals("43", after.get("size"));
+
+        assertEquals(2, serializer.getHitCount());
+        assertEquals(4, serializer.getMissCount());
+    }
+
+    @Test
+    public void testProductCacheEvictsLeastRecentlyUsed() {
+        ProductSerializer serializer = new ProductSerializer(2);
+        Product a = new Product.Builder("A", "sku-a", 1.0).build();
+        Product b = new Product.Builder("B", "sku-b", 1.0).build();
+        Product c = new Product.Builder("C", "sku-c", 1.0).build();
+
+        serializer.serialize(a);
+        serializer.serialize(b);
+        serializer.serialize(a);
+        serializer.serialize(c); // evicts b
+        serializer.serialize(a);
+        serializer.serialize(b);
+
+        assertEquals(2, serializer.getHitCount());
+        assertEquals(4, serializer.getMissCount());
+    }
+}
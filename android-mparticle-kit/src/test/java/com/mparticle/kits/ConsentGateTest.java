@@ -0,0 +1,85 @@
+package com.mparticle.kits;
+
+import com.mparticle.consent.CCPAConsent;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.consent.GDPRConsent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConsentGateTest {
+
+    private static ConsentState gdpr(String purpose, boolean consented) {
+        return ConsentState.builder()
+                .addGDPRConsentState(purpose, GDPRConsent.builder(consented).build())
+                .build();
+    }
+
+    @Test
+    public void testNoRequirementsOpensEverything() {
+        ConsentGate gate = ConsentGate.parse(null, " , ", "", false);
+
+        assertSame(ConsentGate.NONE, gate);
+        assertTrue(gate.isEmpty());
+        assertEquals(ConsentGate.ALL, gate.compile(null));
+        assertEquals(ConsentGate.ALL, gate.compile(gdpr("marketing", false)));
+    }
+
+    @Test
+    public void testChannelNeedsAllItsPurposes() {
+        ConsentGate gate = ConsentGate.parse("Analytics, marketing", "analytics", null, false);
+
+        // nothing is known yet, only the channel without requirements is open
+        assertEquals(ConsentGate.PUSH, gate.compile(null));
+
+        assertEquals(ConsentGate.IDENTIFY | ConsentGate.PUSH, gate.compile(gdpr("analytics", true)));
+
+        ConsentState both = ConsentState.builder()
+                .addGDPRConsentState("ANALYTICS", GDPRConsent.builder(true).build())
+                .addGDPRConsentState("marketing", GDPRConsent.builder(true).build())
+                .build();
+        assertEquals(ConsentGate.ALL, gate.compile(both));
+
+        ConsentState withdrawn = ConsentState.builder()
+                .addGDPRConsentState("analytics", GDPRConsent.builder(true).build())
+                .addGDPRConsentState("marketing", GDPRConsent.builder(false).build())
+                .build();
+        assertEquals(ConsentGate.IDENTIFY | ConsentGate.PUSH, gate.compile(withdrawn));
+    }
+
+    @Test
+    public void testCcpaOptOutClosesEventsAndIdentify() {
+        ConsentGate gate = ConsentGate.parse(null, null, null, true);
+
+        ConsentState optedOut = ConsentState.builder()
+                .setCCPAConsentState(CCPAConsent.builder(true).build())
+                .build();
+        assertEquals(ConsentGate.PUSH, gate.compile(optedOut));
+
+        ConsentState optedIn = ConsentState.builder()
+                .setCCPAConsentState(CCPAConsent.builder(false).build())
+                .build();
+        assertEquals(ConsentGate.ALL, gate.compile(optedIn));
+        assertEquals(ConsentGate.ALL, gate.compile(null));
+    }
+
+    @Test
+    public void testSettingsBuildTheGate() {
+        assertSame(ConsentGate.NONE, KitSettings.EMPTY.getConsentGate());
+
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.CONSENT_PUSH_PURPOSES, "notifications");
+        KitSettings settings = new KitSettings(raw);
+
+        ConsentGate gate = settings.getConsentGate();
+        assertSame(gate, settings.getConsentGate());
+        assertEquals(ConsentGate.EVENTS | ConsentGate.IDENTIFY, gate.compile(gdpr("analytics", true)));
+        assertEquals(ConsentGate.ALL, gate.compile(gdpr("notifications", true)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeepLinkCacheTest {
+
+    private static final String SHORT_LINK = "https://links.example.com/z/abc";
+    private static final String DESTINATION = "https://shop.example.com/sale?id=1";
+
+    private static final String TRACKING_LINK =
+            "https://links.example.com/track?uid=1&redir=https%3A%2F%2Fshop.example.com%2Fsale%3Fid%3D1#top";
+
+    @Test
+    public void testResolvesRedirectParameterLocally() {
+        DeepLinkCache cache = new DeepLinkCache(10, 60000);
+
+        assertEquals(DESTINATION, cache.get(TRACKING_LINK));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testPrefetchCachesRedirectTarget() {
+        DeepLinkCache cache = new DeepLinkCache(10, 60000);
+
+        assertTrue(cache.prefetch(TRACKING_LINK));
+        assertTrue(cache.prefetch(TRACKING_LINK));
+        assertEquals(1, cache.size());
+        assertTrue(cache.getResolveMillis(TRACKING_LINK) >= 0);
+        assertEquals(DESTINATION, cache.get(TRACKING_LINK));
+    }
+
+    @Test
+    public void testPrefetchLeavesShortLinksToTheSdk() {
+        DeepLinkCache cache = new DeepLinkCache(10, 60000);
+
+        // resolving it would mean requesting it, which Blueshift counts as a click
+        assertFalse(cache.prefetch(SHORT_LINK));
+        assertEquals(0, cache.size());
+        assertEquals(-1, cache.getResolveMillis(SHORT_LINK));
+        assertNull(cache.get(SHORT_LINK));
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        DeepLinkCache cache = new DeepLinkCache(10, 20);
+
+        cache.put(SHORT_LINK, DESTINATION, System.nanoTime());
+        assertEquals(DESTINATION, cache.get(SHORT_LINK));
+
+        Thread.sleep(40);
+        assertNull(cache.get(SHORT_LINK));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        DeepLinkCache cache = new DeepLinkCache(2, 60000);
+
+        cache.put("https://a", DESTINATION, System.nanoTime());
+        cache.put("https://b", DESTINATION, System.nanoTime());
+        cache.get("https://a");
+        cache.put("https://c", DESTINATION, System.nanoTime());
+
+        assertEquals(DESTINATION, cache.get("https://a"));
+        assertNull(cache.get("https://b"));
+    }
+
+    @Test
+    public void testFindsLinksInPayload() {
+        String payload = "{\"deep_link_url\":\"https:\\/\\/links.example.com\\/z\\/abc\","
+                + "\"actions\":[{\"deep_link_url\":\"http://links.example.com/track?redir=x\"}],"
+                + "\"title\":\"httpd is not a link\"}";
+
+        List<String> links = new ArrayList<>();
+        DeepLinkCache.findLinks(payload, links);
+
+        assertEquals(Arrays.asList(SHORT_LINK, "http://links.example.com/track?redir=x"), links);
+    }
+}
@@ -0,0 +1,137 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticForwarderTest {
+
+    @Test
+    public void testRateLimitsPerFingerprint() {
+        RecordingSink sink = new RecordingSink();
+        DiagnosticForwarder forwarder = new DiagnosticForwarder(sink, 2, 10);
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        for (int i = 0; i < 5; i++) {
+            forwarder.logException(failure, null, null, 0);
+        }
+
+        assertEquals(2, sink.names.size());
+        assertEquals(DiagnosticForwarder.EVENT_EXCEPTION, sink.names.get(0));
+        assertEquals(IllegalStateException.class.getName(), sink.params.get(0).get(DiagnosticForwarder.KEY_EXCEPTION_CLASS));
+        assertEquals("boom", sink.params.get(0).get(DiagnosticForwarder.KEY_MESSAGE));
+        assertEquals(3L, forwarder.getSuppressedCount());
+
+        // half a minute earns one of the two tokens back, the event carries what was suppressed
+        assertTrue(forwarder.logException(failure, null, null, 30000));
+        assertEquals(4L, sink.params.get(2).get(DiagnosticForwarder.KEY_OCCURRENCES));
+    }
+
+    @Test
+    public void testFingerprintUsesClassAndTopFrames() {
+        StackTraceElement[] site = {
+                new StackTraceElement("com.example.Cart", "checkout", "Cart.java", 42),
+                new StackTraceElement("com.example.Activity", "onClick", "Activity.java", 7)
+        };
+        StackTraceElement[] otherSite = {
+                new StackTraceElement("com.example.Cart", "checkout", "Cart.java", 43),
+                new StackTraceElement("com.example.Activity", "onClick", "Activity.java", 7)
+        };
+
+        long fingerprint = DiagnosticForwarder.fingerprint("java.lang.IllegalStateException", site);
+        assertEquals(fingerprint, DiagnosticForwarder.fingerprint("java.lang.IllegalStateException", site.clone()));
+        assertNotEquals(fingerprint, DiagnosticForwarder.fingerprint("java.lang.IllegalStateException", otherSite));
+        assertNotEquals(fingerprint, DiagnosticForwarder.fingerprint("java.lang.NullPointerException", site));
+    }
+
+    @Test
+    public void testErrorFingerprintIgnoresIds() {
+        assertEquals("order # failed after # tries", DiagnosticForwarder.normalize("order 123 failed after 3 tries"));
+        assertEquals("user # not found: #", DiagnosticForwarder.normalize("user a1b2c3 not found: 0x1f"));
+        assertEquals("payment failed", DiagnosticForwarder.normalize("payment failed"));
+
+        RecordingSink sink = new RecordingSink();
+        DiagnosticForwarder forwarder = new DiagnosticForwarder(sink, 2, 10);
+        for (int i = 0; i < 5; i++) {
+            forwarder.logError("order " + i + " failed", null, 0);
+        }
+
+        assertEquals(2, sink.names.size());
+        assertEquals("order 1 failed", sink.params.get(1).get(DiagnosticForwarder.KEY_MESSAGE));
+        assertEquals(3L, forwarder.getSuppressedCount());
+    }
+
+    @Test
+    public void testBreadcrumbsAttachedToNextError() {
+        RecordingSink sink = new RecordingSink();
+        DiagnosticForwarder forwarder = new DiagnosticForwarder(sink, 10, 3);
+
+        for (int i = 1; i <= 5; i++) {
+            forwarder.leaveBreadcrumb("step " + i);
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("screen", "cart");
+        assertTrue(forwarder.logError("payment failed", attributes, 0));
+
+        HashMap<String, Object> params = sink.params.get(0);
+        assertEquals(DiagnosticForwarder.EVENT_ERROR, sink.names.get(0));
+        assertEquals("cart", params.get("screen"));
+        assertEquals(Arrays.asList("step 3", "step 4", "step 5"), params.get(DiagnosticForwarder.KEY_BREADCRUMBS));
+
+        assertTrue(forwarder.logError("payment failed", null, 0));
+        assertNull(sink.params.get(1).get(DiagnosticForwarder.KEY_BREADCRUMBS));
+    }
+
+    @Test
+    public void testVolumeAndMemoryStayBounded() {
+        RecordingSink sink = new RecordingSink();
+        DiagnosticForwarder forwarder = new DiagnosticForwarder(sink, 10, 3);
+
+        for (int i = 0; i < 500; i++) {
+            forwarder.logError("error " + word(i), null, 0);
+        }
+
+        assertEquals(DiagnosticForwarder.MAX_TOTAL_PER_MINUTE, sink.names.size());
+        assertTrue(forwarder.getFingerprintCount() <= DiagnosticForwarder.MAX_FINGERPRINTS);
+
+        // an error held back by the total keeps its own token
+        assertFalse(forwarder.logError("error " + word(499), null, 1000));
+        assertTrue(forwarder.logError("error " + word(499), null, 3000));
+    }
+
+    /**
+     * @return a distinct word without digits, messages with digits share a fingerprint
+     */
+    private static String word(int i) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return builder.toString();
+    }
+
+    @Test
+    public void testRestoredBudgetSurvivesRestart() {
+        RecordingSink sink = new RecordingSink();
+        DiagnosticForwarder previous = new DiagnosticForwarder(sink, 60, 3);
+        for (int i = 0; i < DiagnosticForwarder.MAX_TOTAL_PER_MINUTE; i++) {
+            previous.logError("crash " + i, null, 1000);
+        }
+
+        DiagnosticForwarder next = new DiagnosticForwarder(sink, 60, 3);
+        next.restoreTotalBudget(previous.getTotalTokens(), previous.getTotalRefilledAtMillis());
+
+        assertFalse(next.logError("crash", null, 2000));
+        assertTrue(next.logError("crash", null, 4000));
+    }
+}
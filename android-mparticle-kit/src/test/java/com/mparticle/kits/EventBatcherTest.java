@@ -0,0 +1,64 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventBatcherTest {
+
+    @Test
+    public void testFlushesWhenBatchIsFull() throws Exception {
+        RecordingSink sink = new RecordingSink(3);
+        KitExecutor executor = KitExecutor.create(null);
+        EventBatcher batcher = new EventBatcher(sink, executor, 3, 0);
+
+        batcher.add("a", null, 0);
+        batcher.add("b", null, 0);
+        assertEquals(2, batcher.size());
+        assertTrue(sink.names.isEmpty());
+
+        batcher.add("c", null, 0);
+        assertTrue(sink.latch.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b", "c"), sink.names);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFlushesByAge() throws Exception {
+        RecordingSink sink = new RecordingSink(1);
+        KitExecutor executor = KitExecutor.create(null);
+        EventBatcher batcher = new EventBatcher(sink, executor, 10, 100);
+
+        batcher.add("a", null, 0);
+        assertTrue(sink.latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, batcher.size());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOverflowDrainsInline() {
+        RecordingSink sink = new RecordingSink(0);
+        KitExecutor executor = KitExecutor.create(null);
+        executor.shutdown(); // never flushes on its own
+
+        EventBatcher batcher = new EventBatcher(sink, executor, 100, 0) {
+            @Override
+            void flush() {
+            }
+        };
+
+        for (int i = 0; i < 401; i++) {
+            batcher.add("e" + i, null, 0);
+        }
+
+        assertEquals(400, sink.names.size());
+        assertEquals("e0", sink.names.get(0));
+        assertEquals(1, batcher.size());
+    }
+}
@@ -0,0 +1,111 @@
+package com.mparticle.kits;
+
+import com.mparticle.MPEvent;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventExtrasTest {
+
+    // bytes logEvent may allocate on the logging thread: the params map, its slot in the
+    // forwarding queue and the reporting message mParticle asks for, which is the most of an
+    // event without attributes
+    private static final long EMPTY_EVENT_BUDGET = 128;
+    private static final long TEN_ATTRIBUTE_EVENT_BUDGET = 1536;
+
+    private static final int ITERATIONS = 100000;
+
+    private Object sink;
+
+    @Test
+    public void testEmptyAttributesGiveNull() {
+        assertNull(EventExtras.from(null));
+        assertNull(EventExtras.from(Collections.<String, String>emptyMap()));
+    }
+
+    @Test
+    public void testAttributesAreCopied() {
+        Map<String, String> attributes = attributes(3);
+        HashMap<String, Object> extras = EventExtras.from(attributes, 1);
+
+        assertEquals(3, extras.size());
+        assertEquals("value1", extras.get("key1"));
+    }
+
+    @Test
+    public void testLogEventAllocationBudget() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+        long empty = bytesPerEvent(null);
+        assertTrue(empty + " bytes per event", empty <= EMPTY_EVENT_BUDGET);
+
+        long tenAttributes = bytesPerEvent(attributes(10));
+        assertTrue(tenAttributes + " bytes per event", tenAttributes <= TEN_ATTRIBUTE_EVENT_BUDGET);
+    }
+
+    /**
+     * @return bytes BlueshiftKit.logEvent allocates on the logging thread per event, with the
+     * kit running and forwarding to a stand-in for the SDK
+     */
+    private long bytesPerEvent(Map<String, String> attributes) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        final AtomicInteger forwarded = new AtomicInteger();
+        Map<String, String> settings = new HashMap<>();
+        settings.put(KitSettings.SHOULD_LOG_MP_EVENTS, "true");
+
+        BlueshiftKit kit = new BlueshiftKit(Mockito.mock(KitConfiguration.class), settings, new EventBatcher.Sink() {
+            @Override
+            public void track(String eventName, HashMap<String, Object> params) {
+                forwarded.incrementAndGet();
+            }
+        });
+
+        MPEvent.Builder builder = new MPEvent.Builder("purchase");
+        if (attributes != null) {
+            builder.customAttributes(attributes);
+        }
+        MPEvent event = builder.build();
+
+        try {
+            // warm up so that the measured loop runs compiled code
+            logEvents(kit, event, ITERATIONS);
+
+            long before = bean.getThreadAllocatedBytes(threadId);
+            logEvents(kit, event, ITERATIONS);
+            long after = bean.getThreadAllocatedBytes(threadId);
+
+            assertTrue(forwarded.get() > 0);
+            return (after - before) / ITERATIONS;
+        } finally {
+            kit.setOptOut(true);
+        }
+    }
+
+    private void logEvents(BlueshiftKit kit, MPEvent event, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            sink = kit.logEvent(event);
+        }
+    }
+
+    private static Map<String, String> attributes(int count) {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            attributes.put("key" + i, "value" + i);
+        }
+
+        return attributes;
+    }
+}
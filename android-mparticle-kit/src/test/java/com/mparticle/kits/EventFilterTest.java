@@ -0,0 +1,69 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventFilterTest {
+
+    @Test
+    public void testEmptyRules() {
+        EventFilter filter = EventFilter.parse(null, "", null, " ");
+        assertTrue(filter.isEmpty());
+        assertTrue(filter.shouldForward("anything"));
+    }
+
+    @Test
+    public void testAllowlist() {
+        EventFilter filter = EventFilter.parse("purchase, checkout_*", null, null, null);
+
+        assertTrue(filter.shouldForward("purchase"));
+        assertTrue(filter.shouldForward("checkout_step_1"));
+        assertFalse(filter.shouldForward("checkout"));
+        assertFalse(filter.shouldForward("scroll"));
+    }
+
+    @Test
+    public void testDenylistWinsOverAllowlist() {
+        EventFilter filter = EventFilter.parse("app_*", "app_debug*", null, null);
+
+        assertTrue(filter.shouldForward("app_open"));
+        assertFalse(filter.shouldForward("app_debug_tap"));
+    }
+
+    @Test
+    public void testSampling() {
+        EventFilter filter = EventFilter.parse(null, null, "scroll:0.25, never:0, broken:x", null, new Random(42));
+
+        int forwarded = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.shouldForward("scroll")) forwarded++;
+        }
+
+        assertTrue(forwarded > 2000 && forwarded < 3000);
+        assertFalse(filter.shouldForward("never"));
+        assertTrue(filter.shouldForward("broken"));
+        assertTrue(filter.shouldForward("other"));
+    }
+
+    @Test
+    public void testStripAttributes() {
+        HashMap<String, Object> extras = new HashMap<>();
+        extras.put("email", "a@b.c");
+        extras.put("debug_id", "1");
+        extras.put("debug_trace", "2");
+        extras.put("plan", "pro");
+
+        EventFilter.parse(null, null, null, "email").stripAttributes(extras);
+        assertEquals(3, extras.size());
+
+        EventFilter.parse(null, null, null, "debug_*").stripAttributes(extras);
+        assertEquals(1, extras.size());
+        assertTrue(extras.containsKey("plan"));
+    }
+}
@@ -0,0 +1,185 @@
+package com.mparticle.kits;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventJournalTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static HashMap<String, Object> params(String key, Object value) {
+        HashMap<String, Object> params = new HashMap<>();
+        params.put(key, value);
+        return params;
+    }
+
+    @Test
+    public void testUndeliveredEventsAreReplayed() {
+        EventJournal journal = new EventJournal(directory, DIRECT, 64 * 1024);
+        assertTrue(journal.open().isEmpty());
+
+        long first = journal.append("first", params("count", 1L));
+        journal.append("second", new HashMap<String, Object>());
+        journal.append("third", params("price", 9.5));
+        journal.markDelivered(first);
+
+        List<EventJournal.Record> records = new EventJournal(directory, DIRECT, 64 * 1024).open();
+        assertEquals(2, records.size());
+        assertEquals("second", records.get(0).eventName);
+        assertTrue(records.get(0).params.isEmpty());
+        assertEquals(9.5, records.get(1).params.get("price"));
+    }
+
+    @Test
+    public void testOutOfOrderDeliveryIsTrackedBySequence() {
+        EventJournal journal = new EventJournal(directory, DIRECT, 64 * 1024);
+        journal.open();
+
+        journal.append("batched", params("key", "batched"));
+        long priority = journal.append("priority", params("key", "priority"));
+        journal.append("dropped", params("key", "dropped"));
+
+        // the priority event overtakes the batched one
+        journal.markDelivered(priority);
+
+        EventJournal reopened = new EventJournal(directory, DIRECT, 64 * 1024);
+        List<EventJournal.Record> records = reopened.open();
+        assertEquals(2, records.size());
+        assertEquals("batched", records.get(0).eventName);
+        assertEquals("dropped", records.get(1).eventName);
+
+        // the replayed events are delivered in turn, nothing is left for the next start
+        reopened.markDelivered(records.get(1).seq);
+        reopened.markDelivered(records.get(0).seq);
+        assertTrue(new EventJournal(directory, DIRECT, 64 * 1024).open().isEmpty());
+    }
+
+    @Test
+    public void testEventsWithoutParamsAreDeliveredOneByOne() {
+        EventJournal journal = new EventJournal(directory, DIRECT, 64 * 1024);
+        journal.open();
+
+        long first = journal.append("first", null);
+        journal.append("second", null);
+        long third = journal.append("third", null);
+        journal.markDelivered(third);
+        journal.markDelivered(first);
+
+        EventJournal reopened = new EventJournal(directory, DIRECT, 64 * 1024);
+        List<EventJournal.Record> records = reopened.open();
+        assertEquals(1, records.size());
+        assertEquals("second", records.get(0).eventName);
+        assertNull(records.get(0).params);
+
+        reopened.markDelivered(records.get(0).seq);
+        assertTrue(new EventJournal(directory, DIRECT, 64 * 1024).open().isEmpty());
+    }
+
+    @Test
+    public void testDiscardForgetsEverything() {
+        EventJournal journal = new EventJournal(directory, DIRECT, 64 * 1024);
+        journal.open();
+
+        journal.append("first", params("key", "value"));
+        journal.append("second", params("key", "value"));
+        journal.discard();
+
+        assertTrue(new EventJournal(directory, DIRECT, 64 * 1024).open().isEmpty());
+    }
+
+    @Test
+    public void testDeliveredSegmentsAreDeleted() {
+        EventJournal journal = new EventJournal(directory, DIRECT, 64 * 1024);
+        journal.open();
+
+        long first = journal.append("first", params("key", "value"));
+        long second = journal.append("second", params("key", "value"));
+        journal.markDelivered(second);
+        journal.markDelivered(first);
+
+        for (File file : directory.listFiles()) {
+            assertFalse(file.getName().endsWith(".journal"));
+        }
+        assertTrue(new EventJournal(directory, DIRECT, 64 * 1024).open().isEmpty());
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws Exception {
+        EventJournal journal = new EventJournal(directory, DIRECT, 64 * 1024);
+        journal.open();
+        journal.append("first", params("key", "value"));
+        journal.append("second", params("key", "value"));
+
+        File segment = new File(directory, "events-0.journal");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        List<EventJournal.Record> records = new EventJournal(directory, DIRECT, 64 * 1024).open();
+        assertEquals(1, records.size());
+        assertEquals("first", records.get(0).eventName);
+    }
+
+    @Test
+    public void testSizeCapEvictsOldestSegments() {
+        EventJournal journal = new EventJournal(directory, DIRECT, 4 * 1024);
+        journal.open();
+
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++) value.append('x');
+
+        for (int i = 0; i < 100; i++) {
+            journal.append("event" + i, params("payload", value.toString()));
+        }
+
+        long totalBytes = 0;
+        for (File file : directory.listFiles()) {
+            totalBytes += file.length();
+        }
+
+        assertTrue(totalBytes <= 4 * 1024 + 1024);
+        assertTrue(journal.getEvictedSegmentCount() > 0);
+
+        List<EventJournal.Record> records = new EventJournal(directory, DIRECT, 4 * 1024).open();
+        assertEquals("event99", records.get(records.size() - 1).eventName);
+    }
+}
@@ -0,0 +1,208 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ForwardingQueueTest {
+
+    private static class Recorder implements EventBatcher.JournaledSink, ForwardingQueue.DropListener {
+        final List<String> tracked = new ArrayList<>();
+        final List<String> dropped = new ArrayList<>();
+        final List<Long> droppedSeqs = new ArrayList<>();
+
+        @Override
+        public synchronized void track(String eventName, HashMap<String, Object> params, long seq) {
+            tracked.add(eventName);
+        }
+
+        @Override
+        public synchronized void onDropped(String eventName, HashMap<String, Object> params, long seq) {
+            dropped.add(eventName);
+            droppedSeqs.add(seq);
+        }
+    }
+
+    /**
+     * Holds the executor busy until released, so the queue fills up.
+     */
+    private static CountDownLatch block(KitExecutor executor) {
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        return release;
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        Recorder recorder = new Recorder();
+        KitExecutor executor = KitExecutor.create(null);
+        CountDownLatch release = block(executor);
+
+        ForwardingQueue queue = new ForwardingQueue(recorder, recorder, executor, 2,
+                ForwardingQueue.Policy.DROP_OLDEST, 0, new Random(1));
+
+        assertTrue(queue.offer("a", null, 1));
+        assertTrue(queue.offer("b", null, 2));
+        assertTrue(queue.offer("c", null, 3));
+        assertEquals(2, queue.size());
+
+        release.countDown();
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("b", "c"), recorder.tracked);
+        assertEquals(Arrays.asList("a"), recorder.dropped);
+        assertEquals(Arrays.asList(1L), recorder.droppedSeqs);
+        assertEquals(1, queue.getDroppedCount());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        Recorder recorder = new Recorder();
+        KitExecutor executor = KitExecutor.create(null);
+        CountDownLatch release = block(executor);
+
+        ForwardingQueue queue = new ForwardingQueue(recorder, recorder, executor, 2,
+                ForwardingQueue.Policy.DROP_NEWEST, 0, new Random(1));
+
+        queue.offer("a", null, 0);
+        queue.offer("b", null, 0);
+        assertFalse(queue.offer("c", null, 0));
+
+        release.countDown();
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("a", "b"), recorder.tracked);
+        assertEquals(Arrays.asList("c"), recorder.dropped);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBlockWaitsForRoom() throws Exception {
+        Recorder recorder = new Recorder();
+        KitExecutor executor = KitExecutor.create(null);
+        final CountDownLatch release = block(executor);
+
+        ForwardingQueue queue = new ForwardingQueue(recorder, recorder, executor, 1,
+                ForwardingQueue.Policy.BLOCK, 5000, new Random(1));
+
+        queue.offer("a", null, 0);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                release.countDown();
+            }
+        }).start();
+
+        // waits until the executor takes "a"
+        assertTrue(queue.offer("b", null, 0));
+
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b"), recorder.tracked);
+        assertTrue(recorder.dropped.isEmpty());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBlockTimesOut() throws Exception {
+        Recorder recorder = new Recorder();
+        KitExecutor executor = KitExecutor.create(null);
+        CountDownLatch release = block(executor);
+
+        ForwardingQueue queue = new ForwardingQueue(recorder, recorder, executor, 1,
+                ForwardingQueue.Policy.BLOCK, 20, new Random(1));
+
+        queue.offer("a", null, 0);
+        assertFalse(queue.offer("b", null, 0));
+        assertEquals(Arrays.asList("b"), recorder.dropped);
+
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSampleKeepsHalfTheQueue() throws Exception {
+        Recorder recorder = new Recorder();
+        KitExecutor executor = KitExecutor.create(null);
+        CountDownLatch release = block(executor);
+
+        ForwardingQueue queue = new ForwardingQueue(recorder, recorder, executor, 100,
+                ForwardingQueue.Policy.SAMPLE, 0, new Random(1));
+
+        for (int i = 0; i < 1000; i++) {
+            queue.offer("e" + i, null, 0);
+        }
+
+        // everything up to half full, then fewer and fewer
+        assertTrue(queue.size() >= 50);
+        assertTrue(queue.size() <= 100);
+        assertEquals(1000 - queue.size(), queue.getDroppedCount());
+
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPriorityQueueIsBoundedAndDrainsFirst() throws Exception {
+        final Recorder recorder = new Recorder();
+        KitExecutor executor = KitExecutor.create(null);
+        CountDownLatch release = block(executor);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                recorder.track("regular", null, 0);
+            }
+        });
+
+        ForwardingQueue queue = new ForwardingQueue(recorder, recorder, executor, true, 2,
+                ForwardingQueue.Policy.DROP_OLDEST, 0, new Random(1));
+
+        queue.offer("a", null, 0);
+        queue.offer("b", null, 0);
+        queue.offer("c", null, 0);
+        assertEquals(2, queue.size());
+
+        release.countDown();
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("b", "c", "regular"), recorder.tracked);
+        assertEquals(Arrays.asList("a"), recorder.dropped);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPolicyParsing() {
+        assertEquals(ForwardingQueue.Policy.BLOCK, ForwardingQueue.Policy.parse("block", ForwardingQueue.Policy.SAMPLE));
+        assertEquals(ForwardingQueue.Policy.DROP_NEWEST, ForwardingQueue.Policy.parse(" Drop_Newest ", ForwardingQueue.Policy.SAMPLE));
+        assertEquals(ForwardingQueue.Policy.SAMPLE, ForwardingQueue.Policy.parse("unknown", ForwardingQueue.Policy.SAMPLE));
+        assertEquals(ForwardingQueue.Policy.SAMPLE, ForwardingQueue.Policy.parse(null, ForwardingQueue.Policy.SAMPLE));
+    }
+}
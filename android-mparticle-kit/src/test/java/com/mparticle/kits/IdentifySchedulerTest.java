@@ -0,0 +1,99 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdentifySchedulerTest {
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        IdentifyScheduler scheduler = new IdentifyScheduler(new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+                latch.countDown();
+            }
+        }, KitExecutor.create(null), 200);
+
+        for (int i = 0; i < 22; i++) {
+            scheduler.schedule();
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(22, scheduler.getRequestCount());
+        assertEquals(1, scheduler.getIdentifyCount());
+        assertEquals(21, scheduler.getCoalescedCount());
+    }
+
+    @Test
+    public void testZeroWindowRunsImmediately() {
+        final AtomicInteger calls = new AtomicInteger();
+        IdentifyScheduler scheduler = new IdentifyScheduler(new Runnable() {
+            @Override
+            public void run() {
+                calls.incrementAndGet();
+            }
+        }, KitExecutor.create(null), 0);
+
+        scheduler.schedule();
+        scheduler.schedule();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, scheduler.getCoalescedCount());
+    }
+
+    @Test
+    public void testFlushOvertakesQueuedEvents() throws Exception {
+        final List<String> order = new ArrayList<>();
+        KitExecutor executor = KitExecutor.create(null);
+
+        IdentifyScheduler scheduler = new IdentifyScheduler(new Runnable() {
+            @Override
+            public void run() {
+                order.add("identify");
+            }
+        }, executor, 20);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            final String name = "event" + i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(name);
+                }
+            });
+        }
+
+        scheduler.schedule();
+        // the window closes while the events are still queued
+        Thread.sleep(200);
+        release.countDown();
+
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("identify", "event0", "event1", "event2"), order);
+
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,95 @@
+package com.mparticle.kits;
+
+import com.mparticle.MParticle;
+import com.mparticle.consent.CCPAConsent;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.consent.GDPRConsent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityFingerprintTest {
+
+    private static Map<MParticle.IdentityType, String> identities(String email, String customerId) {
+        Map<MParticle.IdentityType, String> identities = new HashMap<>();
+        identities.put(MParticle.IdentityType.Email, email);
+        identities.put(MParticle.IdentityType.CustomerId, customerId);
+        return identities;
+    }
+
+    @Test
+    public void testIdentitiesChangeOnce() {
+        IdentityFingerprint fingerprint = new IdentityFingerprint(
+                IdentityFingerprint.UNKNOWN, IdentityFingerprint.UNKNOWN, IdentityFingerprint.UNKNOWN);
+
+        assertTrue(fingerprint.setIdentities(identities("a@example.com", "1")));
+        assertFalse(fingerprint.setIdentities(identities("a@example.com", "1")));
+        assertTrue(fingerprint.setIdentities(identities("b@example.com", "1")));
+        assertTrue(fingerprint.setIdentities(identities("b@example.com", null)));
+    }
+
+    @Test
+    public void testUnmappedIdentitiesAreIgnored() {
+        Map<MParticle.IdentityType, String> withOther = identities("a@example.com", "1");
+        withOther.put(MParticle.IdentityType.Other, "x");
+
+        assertEquals(
+                IdentityFingerprint.hashIdentities(identities("a@example.com", "1")),
+                IdentityFingerprint.hashIdentities(withOther));
+    }
+
+    @Test
+    public void testNullIsNotEmpty() {
+        assertNotEquals(
+                IdentityFingerprint.hashIdentities(identities(null, "1")),
+                IdentityFingerprint.hashIdentities(identities("", "1")));
+        assertNotEquals(
+                IdentityFingerprint.hashIdentities(identities("a", "b")),
+                IdentityFingerprint.hashIdentities(identities("ab", "")));
+    }
+
+    @Test
+    public void testRestoredFromPersistedHashes() {
+        IdentityFingerprint first = new IdentityFingerprint(
+                IdentityFingerprint.UNKNOWN, IdentityFingerprint.UNKNOWN, IdentityFingerprint.UNKNOWN);
+        first.setIdentities(identities("a@example.com", "1"));
+        first.setPushToken("token");
+
+        IdentityFingerprint restored = new IdentityFingerprint(
+                first.getIdentitiesHash(), first.getPushTokenHash(), first.getConsentHash());
+
+        assertFalse(restored.setIdentities(identities("a@example.com", "1")));
+        assertFalse(restored.setPushToken("token"));
+        assertTrue(restored.setPushToken("new-token"));
+    }
+
+    @Test
+    public void testConsent() {
+        IdentityFingerprint fingerprint = new IdentityFingerprint(
+                IdentityFingerprint.UNKNOWN, IdentityFingerprint.UNKNOWN, IdentityFingerprint.UNKNOWN);
+
+        ConsentState granted = ConsentState.builder()
+                .addGDPRConsentState("marketing", GDPRConsent.builder(true).build())
+                .setCCPAConsentState(CCPAConsent.builder(false).build())
+                .build();
+        ConsentState sameGranted = ConsentState.builder()
+                .addGDPRConsentState("marketing", GDPRConsent.builder(true).build())
+                .setCCPAConsentState(CCPAConsent.builder(false).build())
+                .build();
+        ConsentState withdrawn = ConsentState.builder()
+                .addGDPRConsentState("marketing", GDPRConsent.builder(false).build())
+                .setCCPAConsentState(CCPAConsent.builder(false).build())
+                .build();
+
+        assertTrue(fingerprint.setConsent(granted));
+        assertFalse(fingerprint.setConsent(sameGranted));
+        assertTrue(fingerprint.setConsent(withdrawn));
+    }
+}
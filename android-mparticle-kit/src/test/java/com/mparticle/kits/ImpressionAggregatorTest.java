@@ -0,0 +1,155 @@
+package com.mparticle.kits;
+
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Impression;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.Promotion;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImpressionAggregatorTest {
+
+    private static Product product(String sku) {
+        return new Product.Builder(sku, sku, 1.0).build();
+    }
+
+    private static CommerceEvent impressions(String list, String... skus) {
+        Product[] products = new Product[skus.length];
+        for (int i = 0; i < skus.length; i++) {
+            products[i] = product(skus[i]);
+        }
+        return new CommerceEvent.Builder(new Impression(list, products)).build();
+    }
+
+    @Test
+    public void testDeduplicatesPerList() {
+        RecordingSink sink = new RecordingSink();
+        KitExecutor executor = KitExecutor.create(null);
+        ImpressionAggregator aggregator = new ImpressionAggregator(sink, executor, TimeUnit.HOURS.toMillis(1), 100);
+
+        assertTrue(aggregator.add(impressions("grid", "a", "b")));
+        assertTrue(aggregator.add(impressions("grid", "b", "c")));
+        assertTrue(aggregator.add(impressions("related", "a")));
+        assertEquals(4, aggregator.size());
+
+        aggregator.drain();
+        assertEquals(Arrays.asList(ImpressionAggregator.EVENT_NAME), sink.names);
+
+        HashMap<String, Object> params = sink.params.get(0);
+        assertEquals(5L, params.get(ImpressionAggregator.KEY_IMPRESSION_COUNT));
+
+        List<?> lists = (List<?>) params.get(ImpressionAggregator.KEY_IMPRESSIONS);
+        assertEquals(2, lists.size());
+
+        Map<?, ?> grid = (Map<?, ?>) lists.get(0);
+        assertEquals("grid", grid.get(ImpressionAggregator.KEY_LIST));
+        assertEquals(Arrays.asList("a", "b", "c"), grid.get(ImpressionAggregator.KEY_SKUS));
+        assertEquals(4L, grid.get(ImpressionAggregator.KEY_COUNT));
+
+        // an empty window emits nothing
+        aggregator.drain();
+        assertEquals(1, sink.params.size());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPromotionsAreCounted() {
+        RecordingSink sink = new RecordingSink();
+        KitExecutor executor = KitExecutor.create(null);
+        ImpressionAggregator aggregator = new ImpressionAggregator(sink, executor, TimeUnit.HOURS.toMillis(1), 100);
+
+        Promotion banner = new Promotion().setId("banner-1").setName("Summer sale");
+        aggregator.add(new CommerceEvent.Builder(Promotion.VIEW, banner).build());
+        aggregator.add(new CommerceEvent.Builder(Promotion.VIEW, banner).build());
+        aggregator.add(new CommerceEvent.Builder(Promotion.CLICK, banner).build());
+
+        aggregator.drain();
+
+        HashMap<String, Object> params = sink.params.get(0);
+        assertEquals(3L, params.get(ImpressionAggregator.KEY_PROMOTION_COUNT));
+        assertFalse(params.containsKey(ImpressionAggregator.KEY_IMPRESSIONS));
+
+        List<?> promotions = (List<?>) params.get(ImpressionAggregator.KEY_PROMOTIONS);
+        assertEquals(2, promotions.size());
+        assertEquals(2L, ((Map<?, ?>) promotions.get(0)).get(ImpressionAggregator.KEY_COUNT));
+        assertEquals(Promotion.CLICK, ((Map<?, ?>) promotions.get(1)).get(ImpressionAggregator.KEY_ACTION));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFlushesByWindowAndSize() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        EventBatcher.Sink sink = new EventBatcher.Sink() {
+            @Override
+            public void track(String eventName, HashMap<String, Object> params) {
+                latch.countDown();
+            }
+        };
+        KitExecutor executor = KitExecutor.create(null);
+
+        ImpressionAggregator timed = new ImpressionAggregator(sink, executor, 50, 100);
+        timed.add(impressions("grid", "a"));
+
+        ImpressionAggregator bounded = new ImpressionAggregator(sink, executor, TimeUnit.HOURS.toMillis(1), 2);
+        bounded.add(impressions("grid", "a", "b"));
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, timed.size());
+        assertEquals(0, bounded.size());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFullWindowDoesNotShortenTheNext() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        KitExecutor executor = KitExecutor.create(null);
+        ImpressionAggregator aggregator = new ImpressionAggregator(sink, executor, 300, 2);
+
+        // starts a window, then cuts it short
+        aggregator.add(impressions("grid", "a"));
+        aggregator.add(impressions("grid", "b"));
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+
+        Thread.sleep(150);
+        aggregator.add(impressions("grid", "c"));
+
+        // the first window's timer comes due here, the second window is only half over
+        Thread.sleep(250);
+        synchronized (sink) {
+            assertEquals(1, sink.params.size());
+        }
+        assertEquals(1, aggregator.size());
+
+        Thread.sleep(300);
+        synchronized (sink) {
+            assertEquals(2, sink.params.size());
+        }
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testIgnoresEventsWithoutImpressions() {
+        KitExecutor executor = KitExecutor.create(null);
+        ImpressionAggregator aggregator = new ImpressionAggregator(new RecordingSink(), executor, 1000, 100);
+
+        assertFalse(aggregator.add(new CommerceEvent.Builder(Product.PURCHASE, product("a")).build()));
+        assertEquals(0, aggregator.size());
+
+        executor.shutdown();
+    }
+}
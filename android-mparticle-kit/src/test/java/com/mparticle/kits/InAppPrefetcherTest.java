@@ -0,0 +1,100 @@
+package com.mparticle.kits;
+
+import com.blueshift.inappmessage.InAppApiCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InAppPrefetcherTest {
+
+    private static class FakeClient implements InAppPrefetcher.InAppClient {
+        final List<InAppApiCallback> pending = new ArrayList<>();
+        int displays = 0;
+
+        @Override
+        public void fetch(InAppApiCallback callback) {
+            pending.add(callback);
+        }
+
+        @Override
+        public void displayIfRegistered() {
+            displays++;
+        }
+
+        void completeAll() {
+            List<InAppApiCallback> callbacks = new ArrayList<>(pending);
+            pending.clear();
+            for (InAppApiCallback callback : callbacks) {
+                callback.onSuccess();
+            }
+        }
+    }
+
+    @Test
+    public void testOneFetchAtATime() {
+        FakeClient client = new FakeClient();
+        InAppPrefetcher prefetcher = new InAppPrefetcher(client, 10, 0);
+
+        assertTrue(prefetcher.prefetch());
+        assertFalse(prefetcher.prefetch());
+        assertEquals(1, client.pending.size());
+
+        client.completeAll();
+        assertEquals(1, client.displays);
+        assertTrue(prefetcher.prefetch());
+        assertEquals(2, prefetcher.getFetchCount());
+    }
+
+    @Test
+    public void testSessionBudget() {
+        FakeClient client = new FakeClient();
+        InAppPrefetcher prefetcher = new InAppPrefetcher(client, 2, 0);
+
+        assertTrue(prefetcher.prefetch());
+        client.completeAll();
+        assertTrue(prefetcher.prefetch());
+        client.completeAll();
+        assertFalse(prefetcher.prefetch());
+
+        prefetcher.startSession();
+        assertTrue(prefetcher.prefetch());
+    }
+
+    @Test
+    public void testMinimumInterval() {
+        FakeClient client = new FakeClient();
+        InAppPrefetcher prefetcher = new InAppPrefetcher(client, 10, 60000);
+
+        assertTrue(prefetcher.prefetch());
+        client.completeAll();
+        assertFalse(prefetcher.prefetch());
+
+        // the interval only applies within a session
+        prefetcher.startSession();
+        assertTrue(prefetcher.prefetch());
+    }
+
+    @Test
+    public void testFailedFetchFreesTheSlot() {
+        InAppPrefetcher prefetcher = new InAppPrefetcher(new InAppPrefetcher.InAppClient() {
+            @Override
+            public void fetch(InAppApiCallback callback) {
+                callback.onFailure(500, "server error");
+            }
+
+            @Override
+            public void displayIfRegistered() {
+            }
+        }, 10, 0);
+
+        assertTrue(prefetcher.prefetch());
+        assertTrue(prefetcher.prefetch());
+        assertEquals(2, prefetcher.getFailureCount());
+    }
+}
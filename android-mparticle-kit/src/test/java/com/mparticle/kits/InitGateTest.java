@@ -0,0 +1,86 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InitGateTest {
+
+    private Runnable record(final List<Integer> log, final int value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(value);
+            }
+        };
+    }
+
+    @Test
+    public void testReplaysInOrder() {
+        List<Integer> log = new ArrayList<>();
+        InitGate gate = new InitGate(10);
+
+        gate.runOrBuffer(record(log, 1));
+        gate.runOrBuffer(record(log, 2));
+        assertFalse(gate.isOpen());
+        assertTrue(log.isEmpty());
+
+        assertEquals(2, gate.open());
+        assertTrue(gate.isOpen());
+
+        gate.runOrBuffer(record(log, 3));
+        assertEquals(Arrays.asList(1, 2, 3), log);
+    }
+
+    @Test
+    public void testDropsOldestWhenFull() {
+        List<Integer> log = new ArrayList<>();
+        InitGate gate = new InitGate(2);
+
+        gate.runOrBuffer(record(log, 1));
+        gate.runOrBuffer(record(log, 2));
+        gate.runOrBuffer(record(log, 3));
+        gate.open();
+
+        assertEquals(Arrays.asList(2, 3), log);
+        assertEquals(1, gate.getDroppedCount());
+    }
+
+    @Test
+    public void testEventsNeverPushIdentityUpdatesOut() {
+        List<Integer> log = new ArrayList<>();
+        InitGate gate = new InitGate(2);
+
+        gate.runOrBufferIdentity(record(log, 1));
+        for (int i = 2; i <= 5; i++) {
+            gate.runOrBuffer(record(log, i));
+        }
+        gate.open();
+
+        assertEquals(Arrays.asList(1, 4, 5), log);
+        assertEquals(2, gate.getDroppedCount());
+    }
+
+    @Test
+    public void testAwaitOpen() throws Exception {
+        final InitGate gate = new InitGate(2);
+        assertFalse(gate.awaitOpen(10));
+
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                gate.open();
+            }
+        });
+        opener.start();
+
+        assertTrue(gate.awaitOpen(5000));
+        opener.join();
+    }
+}
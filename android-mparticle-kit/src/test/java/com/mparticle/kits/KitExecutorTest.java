@@ -0,0 +1,241 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KitExecutorTest {
+
+    @Test
+    public void testTasksRunInOrderOnSharedPool() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        KitExecutor executor = KitExecutor.create(pool);
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        for (int i = 0; i < 1000; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) overlaps.incrementAndGet();
+                    order.add(index);
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        assertTrue(executor.awaitIdle(5, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(1000, order.size());
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+
+        executor.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testPriorityLaneRunsFirst() throws Exception {
+        KitExecutor executor = KitExecutor.create(null);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+
+        for (final String name : new String[]{"event-1", "event-2"}) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(name);
+                }
+            });
+        }
+
+        for (final String name : new String[]{"identify-1", "identify-2"}) {
+            executor.executePriority(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(name);
+                }
+            });
+        }
+
+        release.countDown();
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("identify-1", "identify-2", "event-1", "event-2"), order);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testScheduledTaskJoinsQueue() throws Exception {
+        KitExecutor executor = KitExecutor.create(null);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 20);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testShutdownRunsQueuedTasksAndDropsNewOnes() throws Exception {
+        KitExecutor executor = KitExecutor.create(null);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                runs.incrementAndGet();
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 10);
+
+        executor.shutdown();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+        release.countDown();
+
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+        assertEquals(1, executor.getDroppedCount());
+        assertTrue(executor.isShutdown());
+    }
+
+    @Test
+    public void testShutdownNowDiscardsQueuedTasks() throws Exception {
+        KitExecutor executor = KitExecutor.create(null);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                order.add("running");
+            }
+        });
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    order.add("queued");
+                }
+            });
+        }
+        executor.executePriority(new Runnable() {
+            @Override
+            public void run() {
+                order.add("priority");
+            }
+        });
+
+        assertEquals(4, executor.shutdownNow(new Runnable() {
+            @Override
+            public void run() {
+                order.add("cleanup");
+            }
+        }));
+        release.countDown();
+
+        assertTrue(executor.awaitIdle(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("running", "cleanup"), order);
+        assertEquals(4, executor.getDroppedCount());
+    }
+
+    @Test
+    public void testShutdownNowRunsCleanupWhenIdle() throws Exception {
+        KitExecutor executor = KitExecutor.create(null);
+        final CountDownLatch cleanup = new CountDownLatch(1);
+
+        assertEquals(0, executor.shutdownNow(new Runnable() {
+            @Override
+            public void run() {
+                cleanup.countDown();
+            }
+        }));
+
+        assertTrue(cleanup.await(2, TimeUnit.SECONDS));
+        assertTrue(executor.isShutdown());
+    }
+
+    @Test
+    public void testRejectedWorkRunsOnCaller() {
+        KitExecutor executor = KitExecutor.create(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        final AtomicInteger runs = new AtomicInteger();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, runs.get());
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+}
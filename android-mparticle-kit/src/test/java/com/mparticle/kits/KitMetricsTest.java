@@ -0,0 +1,41 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class KitMetricsTest {
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        KitMetrics metrics = new KitMetrics();
+
+        metrics.increment(KitMetrics.IDENTIFY_ISSUED);
+        metrics.recordLatency(KitMetrics.LATENCY_LOG_EVENT, metrics.startTimer());
+
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(0L, (long) snapshot.get("identify.issued"));
+        assertEquals(0L, (long) snapshot.get("latency.log_event.count"));
+    }
+
+    @Test
+    public void testCountersAndHistograms() {
+        KitMetrics metrics = new KitMetrics();
+        metrics.setEnabled(true);
+
+        metrics.increment(KitMetrics.EVENTS_FORWARDED_MP);
+        metrics.increment(KitMetrics.EVENTS_FORWARDED_MP);
+        metrics.recordLatency(KitMetrics.LATENCY_LOG_EVENT, metrics.startTimer());
+        metrics.recordLatency(KitMetrics.LATENCY_LOG_EVENT, System.nanoTime() - 60000000000L);
+
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(2L, (long) snapshot.get("events_forwarded.mp"));
+        assertEquals(2L, (long) snapshot.get("latency.log_event.count"));
+        assertEquals(1L, (long) snapshot.get("latency.log_event.le_inf"));
+
+        metrics.reset();
+        assertEquals(0L, (long) metrics.snapshot().get("events_forwarded.mp"));
+    }
+}
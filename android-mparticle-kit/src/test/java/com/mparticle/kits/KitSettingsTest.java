@@ -0,0 +1,126 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KitSettingsTest {
+
+    @Test
+    public void testDefaults() {
+        KitSettings settings = KitSettings.EMPTY;
+
+        assertFalse(settings.shouldLogMPEvents());
+        assertTrue(settings.shouldLogUserEvents());
+        assertFalse(settings.shouldLogImpressions());
+        assertEquals(KitSettings.DEFAULT_EVENT_BATCH_SIZE, settings.getEventBatchSize());
+        assertEquals(KitSettings.DEFAULT_QUEUE_CAPACITY, settings.getQueueCapacity());
+        assertEquals(ForwardingQueue.Policy.DROP_OLDEST, settings.getQueuePolicy());
+        assertNull(settings.getEventFilter());
+        assertNull(settings.getPriorityEvents());
+    }
+
+    @Test
+    public void testParsesTypedValues() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.SHOULD_LOG_MP_EVENTS, "TRUE");
+        raw.put(KitSettings.SHOULD_LOG_USER_EVENTS, "false");
+        raw.put(KitSettings.EVENT_BATCH_SIZE, "25");
+        raw.put(KitSettings.QUEUE_POLICY, "sample");
+        raw.put(KitSettings.EVENT_DENYLIST, "debug_*");
+
+        KitSettings settings = new KitSettings(raw);
+
+        assertTrue(settings.shouldLogMPEvents());
+        assertFalse(settings.shouldLogUserEvents());
+        assertEquals(25, settings.getEventBatchSize());
+        assertEquals(ForwardingQueue.Policy.SAMPLE, settings.getQueuePolicy());
+
+        EventFilter filter = settings.getEventFilter();
+        assertNotNull(filter);
+        assertFalse(filter.shouldForward("debug_tap"));
+        // parsed once
+        assertSame(filter, settings.getEventFilter());
+    }
+
+    @Test
+    public void testInvalidValuesFallBackToDefaults() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.EVENT_BATCH_SIZE, "lots");
+        raw.put(KitSettings.QUEUE_CAPACITY, "0");
+        raw.put(KitSettings.IDENTIFY_COALESCE_WINDOW_MS, "-5");
+        raw.put(KitSettings.QUEUE_POLICY, "drop_everything");
+
+        KitSettings settings = new KitSettings(raw);
+
+        assertEquals(KitSettings.DEFAULT_EVENT_BATCH_SIZE, settings.getEventBatchSize());
+        assertEquals(KitSettings.DEFAULT_QUEUE_CAPACITY, settings.getQueueCapacity());
+        assertEquals(KitSettings.DEFAULT_IDENTIFY_COALESCE_WINDOW_MS, settings.getIdentifyCoalesceWindowMillis());
+        assertEquals(ForwardingQueue.Policy.DROP_OLDEST, settings.getQueuePolicy());
+    }
+
+    @Test
+    public void testSwitchesReadLikeParseBoolean() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.SHOULD_LOG_USER_EVENTS, "yes");
+        raw.put(KitSettings.SHOULD_LOG_MP_EVENTS, " true");
+        raw.put(KitSettings.SHOULD_LOG_COMMERCE_EVENTS, null);
+
+        KitSettings settings = new KitSettings(raw);
+
+        // any value other than "true" turns a switch off, even one that defaults to on
+        assertFalse(settings.shouldLogUserEvents());
+        assertFalse(settings.shouldLogMPEvents());
+        assertFalse(settings.shouldLogCommerceEvents());
+        assertTrue(new KitSettings(new HashMap<String, String>()).shouldLogUserEvents());
+    }
+
+    @Test
+    public void testSnapshotIsDetachedFromSource() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.SHOULD_LOG_MP_EVENTS, "true");
+
+        KitSettings settings = new KitSettings(raw);
+        KitSettings same = new KitSettings(raw);
+        raw.put(KitSettings.SHOULD_LOG_MP_EVENTS, "false");
+
+        assertTrue(settings.shouldLogMPEvents());
+        assertEquals(settings, same);
+        assertNotEquals(settings, new KitSettings(raw));
+    }
+
+    @Test
+    public void testRoutingComparison() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.EVENT_ALLOWLIST, "purchase");
+        KitSettings settings = new KitSettings(raw);
+
+        raw.put(KitSettings.SHOULD_LOG_MP_EVENTS, "true");
+        assertTrue(settings.hasSameRoutingAs(new KitSettings(raw)));
+
+        raw.put(KitSettings.PRIORITY_EVENTS, "push_click");
+        assertFalse(settings.hasSameRoutingAs(new KitSettings(raw)));
+    }
+
+    @Test
+    public void testDescribeMasksApiKey() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(KitSettings.EVENT_API_KEY, "secret-api-key-1234");
+        raw.put(KitSettings.SHOULD_LOG_MP_EVENTS, "true");
+
+        String description = new KitSettings(raw).describe();
+
+        assertFalse(description.contains("secret"));
+        assertTrue(description.contains("****1234"));
+        assertTrue(description.contains("\"" + KitSettings.SHOULD_LOG_MP_EVENTS + "\" : \"true\""));
+    }
+}
@@ -0,0 +1,176 @@
+package com.mparticle.kits;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PushPreprocessorTest {
+
+    private static final byte[] IMAGE = new byte[]{1, 2, 3, 4};
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService pool;
+    private File cacheDir;
+    private String baseUrl;
+
+    /**
+     * Copies the file as it is, the tests do not decode real images.
+     */
+    private static final PushPreprocessor.Downsampler COPY = new PushPreprocessor.Downsampler() {
+        @Override
+        public boolean downsample(File source, File target, int maxDimension) throws IOException {
+            InputStream in = new FileInputStream(source);
+            OutputStream out = new FileOutputStream(target);
+            try {
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+            return true;
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (exchange.getRequestURI().getPath().startsWith("/slow")) {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                exchange.sendResponseHeaders(200, IMAGE.length);
+                exchange.getResponseBody().write(IMAGE);
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        pool = Executors.newFixedThreadPool(2);
+        cacheDir = new File(System.getProperty("java.io.tmpdir"), "push-images-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        pool.shutdownNow();
+
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    private static String payload(String imageUrl) {
+        return "{\"title\":\"Sale\",\"image_url\": \"" + imageUrl.replace("/", "\\/") + "\"}";
+    }
+
+    @Test
+    public void testFindsImageUrls() {
+        String json = "{\"image_url\":\"https:\\/\\/cdn.example.com\\/a.png\",\"large_icon_url\":\"http://cdn.example.com/b.png\","
+                + "\"carousel_elements\":[{\"image_url\":\"https://cdn.example.com/c.png\"}],\"deep_link_url\":\"https://example.com\"}";
+
+        List<String> urls = PushPreprocessor.findImageUrls(json);
+
+        assertEquals(Arrays.asList(
+                "https:\\/\\/cdn.example.com\\/a.png",
+                "https://cdn.example.com/c.png",
+                "http://cdn.example.com/b.png"
+        ), urls);
+    }
+
+    @Test
+    public void testWarmsCacheAndKeepsOriginalUrl() {
+        PushPreprocessor preprocessor = new PushPreprocessor(cacheDir, 1024 * 1024, 512, 2000, pool, COPY);
+
+        Map<String, String> extras = new HashMap<>();
+        String original = payload(baseUrl + "/banner.png");
+        extras.put("message", original);
+
+        assertEquals(1, preprocessor.process(extras, NO_LIMIT));
+        assertEquals(original, extras.get("message"));
+
+        // the second push with the same image does not download it again
+        assertEquals(1, preprocessor.process(extras, NO_LIMIT));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testCallerBudgetCapsTheWait() {
+        PushPreprocessor preprocessor = new PushPreprocessor(cacheDir, 1024 * 1024, 512, 2000, pool, COPY);
+
+        Map<String, String> extras = new HashMap<>();
+        extras.put("message", payload(baseUrl + "/slow.png"));
+
+        long start = System.currentTimeMillis();
+        assertEquals(0, preprocessor.process(extras, 50));
+        assertTrue(System.currentTimeMillis() - start < 400);
+    }
+
+    @Test
+    public void testKeepsOriginalUrlPastBudget() {
+        PushPreprocessor preprocessor = new PushPreprocessor(cacheDir, 1024 * 1024, 512, 50, pool, COPY);
+
+        Map<String, String> extras = new HashMap<>();
+        String original = payload(baseUrl + "/slow.png");
+        extras.put("message", original);
+
+        assertEquals(0, preprocessor.process(extras, NO_LIMIT));
+        assertEquals(original, extras.get("message"));
+    }
+
+    @Test
+    public void testFailedDownloadKeepsOriginalUrl() {
+        PushPreprocessor preprocessor = new PushPreprocessor(cacheDir, 1024 * 1024, 512, 2000, pool,
+                new PushPreprocessor.Downsampler() {
+                    @Override
+                    public boolean downsample(File source, File target, int maxDimension) {
+                        return false;
+                    }
+                });
+
+        Map<String, String> extras = new HashMap<>();
+        extras.put("message", payload(baseUrl + "/broken.png"));
+
+        assertEquals(0, preprocessor.process(extras, NO_LIMIT));
+        assertFalse(cacheDir.exists() && cacheDir.list().length > 0);
+    }
+}
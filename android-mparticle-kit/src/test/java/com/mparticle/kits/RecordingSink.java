@@ -0,0 +1,37 @@
+package com.mparticle.kits;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Sink that records the events it is handed, shared by the tests of the forwarding components.
+ */
+class RecordingSink implements EventBatcher.Sink, EventBatcher.JournaledSink {
+
+    final List<String> names = new ArrayList<>();
+    final List<HashMap<String, Object>> params = new ArrayList<>();
+    // counts down once per event
+    final CountDownLatch latch;
+
+    RecordingSink() {
+        this(0);
+    }
+
+    RecordingSink(int expected) {
+        latch = new CountDownLatch(expected);
+    }
+
+    @Override
+    public synchronized void track(String eventName, HashMap<String, Object> eventParams) {
+        names.add(eventName);
+        params.add(eventParams);
+        latch.countDown();
+    }
+
+    @Override
+    public void track(String eventName, HashMap<String, Object> eventParams, long seq) {
+        track(eventName, eventParams);
+    }
+}
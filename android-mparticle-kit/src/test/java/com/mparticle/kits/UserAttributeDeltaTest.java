@@ -0,0 +1,111 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserAttributeDeltaTest {
+
+    @Test
+    public void testLatestValueWins() {
+        UserAttributeDelta delta = new UserAttributeDelta();
+        delta.set("plan", "free");
+        delta.set("plan", "pro");
+        delta.set("visits", 3);
+
+        Map<String, Object> payload = new HashMap<>();
+        assertEquals(2, delta.drainTo(payload));
+        assertEquals("pro", payload.get("mp_plan"));
+        assertEquals(3, payload.get("mp_visits"));
+        assertFalse(delta.hasChanges());
+    }
+
+    @Test
+    public void testUnchangedValuesAreNotShippedAgain() {
+        UserAttributeDelta delta = new UserAttributeDelta();
+        delta.set("plan", "pro");
+        delta.drainTo(new HashMap<String, Object>());
+
+        Map<String, String> profile = new HashMap<>();
+        profile.put("plan", "pro");
+        profile.put("city", "Berlin");
+        delta.setAll(profile, null);
+
+        Map<String, Object> payload = new HashMap<>();
+        assertEquals(1, delta.drainTo(payload));
+        assertEquals("Berlin", payload.get("mp_city"));
+
+        // changed and changed back before the next identify
+        delta.set("plan", "free");
+        delta.set("plan", "pro");
+        assertFalse(delta.hasChanges());
+    }
+
+    @Test
+    public void testKeysNeverShadowBlueshiftKeys() {
+        UserAttributeDelta delta = new UserAttributeDelta();
+        delta.set("$FirstName", "Ada");
+        delta.set("$Age", "36");
+        delta.set("email", "someone@else.com");
+
+        Map<String, Object> payload = new HashMap<>();
+        delta.drainTo(payload);
+
+        assertEquals("Ada", payload.get("firstname"));
+        assertEquals("36", payload.get("mp_Age"));
+        assertEquals("someone@else.com", payload.get("mp_email"));
+        assertFalse(payload.containsKey("email"));
+        assertFalse(payload.containsKey("$FirstName"));
+    }
+
+    @Test
+    public void testRemoveShipsEmptyValue() {
+        UserAttributeDelta delta = new UserAttributeDelta();
+        delta.set("plan", "pro");
+        delta.drainTo(new HashMap<String, Object>());
+
+        delta.remove("plan");
+
+        Map<String, Object> payload = new HashMap<>();
+        assertEquals(1, delta.drainTo(payload));
+        assertEquals(UserAttributeDelta.REMOVED, payload.get("mp_plan"));
+
+        // setting it again is a change
+        delta.set("plan", "pro");
+        assertTrue(delta.hasChanges());
+    }
+
+    @Test
+    public void testListsAreCopied() {
+        UserAttributeDelta delta = new UserAttributeDelta();
+        List<String> interests = new ArrayList<>(Arrays.asList("golf", "chess"));
+        delta.set("interests", interests);
+        interests.add("tennis");
+
+        Map<String, Object> payload = new HashMap<>();
+        delta.drainTo(payload);
+        assertEquals(Arrays.asList("golf", "chess"), payload.get("mp_interests"));
+    }
+
+    @Test
+    public void testReset() {
+        UserAttributeDelta delta = new UserAttributeDelta();
+        delta.set("plan", "pro");
+        delta.drainTo(new HashMap<String, Object>());
+        delta.set("city", "Berlin");
+
+        delta.reset();
+        assertFalse(delta.hasChanges());
+
+        delta.set("plan", "pro");
+        assertTrue(delta.hasChanges());
+    }
+}
@@ -0,0 +1,162 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.identity.MParticleUser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-call cost of the kit's event, push and identity hot paths against the
+ * stand-in collaborators in src/stubs. Run with {@code ./gradlew :benchmark:jmh}; the gc
+ * profiler reports the allocation rate next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BlueshiftKitBenchmark {
+
+    @Param({"0", "10", "100"})
+    public int attributeCount;
+
+    private BlueshiftKit kit;
+    private BlueshiftKit consentBlockedKit;
+    private Map<String, String> attributes;
+    private MPEvent event;
+    private CommerceEvent commerceEvent;
+    private Intent blueshiftPush;
+    private Intent otherPush;
+    private MParticleUser user;
+    private FilteredMParticleUser filteredUser;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("eventApiKey", "benchmark-api-key");
+        settings.put("blueshift_should_log_mp_events", "true");
+        settings.put("blueshift_should_log_commerce_events", "true");
+        settings.put("blueshift_should_log_screen_view_events", "true");
+        settings.put("blueshift_should_log_user_events", "true");
+
+        Context context = new Context();
+        kit = new BlueshiftKit();
+        kit.setContext(context);
+        kit.onKitCreate(settings, context);
+
+        // events need a purpose the benchmark user never consented to
+        Map<String, String> consentSettings = new HashMap<>(settings);
+        consentSettings.put("blueshift_consent_event_purposes", "marketing");
+        consentBlockedKit = new BlueshiftKit();
+        consentBlockedKit.setContext(context);
+        consentBlockedKit.onKitCreate(consentSettings, context);
+
+        attributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put("attribute_" + i, "value_" + i);
+        }
+
+        event = new MPEvent.Builder("benchmark_event")
+                .customAttributes(attributes)
+                .build();
+
+        Product product = new Product.Builder("Benchmark Product", "sku-1", 9.99)
+                .quantity(2)
+                .build();
+        commerceEvent = new CommerceEvent.Builder(Product.PURCHASE, product)
+                .customAttributes(attributes)
+                .build();
+
+        Bundle blueshiftBundle = new Bundle();
+        blueshiftBundle.putString("bsft_message_uuid", "benchmark-message");
+        blueshiftPush = new Intent().putExtras(blueshiftBundle);
+
+        Bundle otherBundle = new Bundle();
+        otherBundle.putString("google.message_id", "benchmark-message");
+        otherPush = new Intent().putExtras(otherBundle);
+
+        final Map<MParticle.IdentityType, String> identities = new HashMap<>();
+        identities.put(MParticle.IdentityType.Email, "benchmark@example.com");
+        identities.put(MParticle.IdentityType.CustomerId, "benchmark-customer");
+        user = new MParticleUser() {
+            @Override
+            public long getId() {
+                return 1;
+            }
+
+            @Override
+            public Map<MParticle.IdentityType, String> getUserIdentities() {
+                return identities;
+            }
+
+            @Override
+            public ConsentState getConsentState() {
+                return null;
+            }
+        };
+        filteredUser = new FilteredMParticleUser(user);
+    }
+
+    @Benchmark
+    public List<ReportingMessage> logEvent() {
+        return kit.logEvent(event);
+    }
+
+    @Benchmark
+    public List<ReportingMessage> logEventConsentBlocked() {
+        return consentBlockedKit.logEvent(event);
+    }
+
+    @Benchmark
+    public List<ReportingMessage> logCommerceEvent() {
+        return kit.logEvent(commerceEvent);
+    }
+
+    @Benchmark
+    public List<ReportingMessage> logScreen() {
+        return kit.logScreen("benchmark_screen", attributes);
+    }
+
+    @Benchmark
+    public HashMap<String, Object> getExtras() {
+        return EventExtras.from(attributes);
+    }
+
+    @Benchmark
+    public boolean willHandleBlueshiftPush() {
+        return kit.willHandlePushMessage(blueshiftPush);
+    }
+
+    @Benchmark
+    public boolean willHandleOtherPush() {
+        return kit.willHandlePushMessage(otherPush);
+    }
+
+    @Benchmark
+    public void onSetUserAttribute() {
+        kit.onSetUserAttribute("benchmark_attribute", "value", filteredUser);
+    }
+
+    @Benchmark
+    public void onUserIdentified() {
+        kit.onUserIdentified(user);
+    }
+}
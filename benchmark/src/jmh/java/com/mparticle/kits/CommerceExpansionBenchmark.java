@@ -0,0 +1,88 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.TransactionAttributes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of expanding purchase events into Blueshift payloads for small and
+ * large carts, with the product cache warm and with every product seen for the first time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommerceExpansionBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int cartSize;
+
+    private BlueshiftKit kit;
+    private CommerceExpander expander;
+    private CommerceEvent purchase;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("eventApiKey", "benchmark-api-key");
+        settings.put("blueshift_should_log_commerce_events", "true");
+
+        Context context = new Context();
+        kit = new BlueshiftKit();
+        kit.setContext(context);
+        kit.onKitCreate(settings, context);
+
+        Map<String, String> productAttributes = new HashMap<>();
+        productAttributes.put("color", "blue");
+        productAttributes.put("size", "M");
+
+        List<Product> products = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            products.add(new Product.Builder("Product " + i, "sku-" + i, 9.99)
+                    .quantity(1 + i % 3)
+                    .category("category-" + i % 10)
+                    .customAttributes(productAttributes)
+                    .build());
+        }
+
+        purchase = new CommerceEvent.Builder(Product.PURCHASE, products.get(0))
+                .products(products)
+                .transactionAttributes(new TransactionAttributes("order-1").setRevenue(100.0))
+                .currency("USD")
+                .build();
+
+        // sized to the cart, so the warm benchmark never misses
+        expander = new CommerceExpander(new ProductSerializer(Math.max(512, cartSize)));
+    }
+
+    @Benchmark
+    public Object logPurchase() {
+        return kit.logEvent(purchase);
+    }
+
+    @Benchmark
+    public HashMap<String, Object> expandWarmCache() {
+        return expander.buildParams(purchase);
+    }
+
+    @Benchmark
+    public HashMap<String, Object> expandColdCache() {
+        return new CommerceExpander(new ProductSerializer()).buildParams(purchase);
+    }
+}
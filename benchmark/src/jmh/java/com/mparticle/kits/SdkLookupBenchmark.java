@@ -0,0 +1,53 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+
+import com.blueshift.Blueshift;
+import com.blueshift.model.UserInfo;
+import com.blueshift.util.DeviceUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolving the Blueshift singletons and device id on every callback with reading
+ * them from {@link BlueshiftHandles}. The stubs only reproduce the synchronized getInstance
+ * calls, not the disk and Play Services work behind a real device id lookup, so the uncached
+ * numbers are a lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SdkLookupBenchmark {
+
+    private Context context;
+    private BlueshiftHandles handles;
+
+    @Setup
+    public void setUp() {
+        context = new Context();
+        handles = new BlueshiftHandles(context);
+    }
+
+    @Benchmark
+    public void uncachedLookups(Blackhole blackhole) {
+        blackhole.consume(Blueshift.getInstance(context));
+        blackhole.consume(UserInfo.getInstance(context));
+        blackhole.consume(DeviceUtils.getDeviceId(context));
+    }
+
+    @Benchmark
+    public void cachedLookups(Blackhole blackhole) {
+        blackhole.consume(handles.blueshift());
+        blackhole.consume(handles.userInfo());
+        blackhole.consume(handles.deviceId());
+    }
+}
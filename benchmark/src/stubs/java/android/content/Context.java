@@ -0,0 +1,26 @@
+package android.content;
+
+import android.content.pm.ApplicationInfo;
+
+import java.io.File;
+
+public class Context {
+
+    private final ApplicationInfo applicationInfo = new ApplicationInfo();
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public ApplicationInfo getApplicationInfo() {
+        return applicationInfo;
+    }
+
+    public File getFilesDir() {
+        return new File(System.getProperty("java.io.tmpdir"), "blueshift-kit-benchmark");
+    }
+
+    public File getCacheDir() {
+        return new File(getFilesDir(), "cache");
+    }
+}
@@ -0,0 +1,42 @@
+package android.content;
+
+import android.net.Uri;
+import android.os.Bundle;
+
+public class Intent {
+
+    private Bundle extras;
+    private Uri data;
+
+    public Intent setData(Uri data) {
+        this.data = data;
+        return this;
+    }
+
+    public Uri getData() {
+        return data;
+    }
+
+    public Intent putExtras(Bundle extras) {
+        this.extras = extras;
+        return this;
+    }
+
+    public Bundle getExtras() {
+        return extras;
+    }
+
+    public Intent putExtra(String name, String value) {
+        if (extras == null) extras = new Bundle();
+        extras.putString(name, value);
+        return this;
+    }
+
+    public boolean hasExtra(String name) {
+        return extras != null && extras.containsKey(name);
+    }
+
+    public String getStringExtra(String name) {
+        return extras != null ? extras.getString(name) : null;
+    }
+}
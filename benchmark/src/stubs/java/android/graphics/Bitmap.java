@@ -0,0 +1,21 @@
+package android.graphics;
+
+import java.io.OutputStream;
+
+public class Bitmap {
+
+    public enum CompressFormat {
+        JPEG, PNG
+    }
+
+    public boolean hasAlpha() {
+        return false;
+    }
+
+    public boolean compress(CompressFormat format, int quality, OutputStream stream) {
+        return false;
+    }
+
+    public void recycle() {
+    }
+}
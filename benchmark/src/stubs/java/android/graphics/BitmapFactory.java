@@ -0,0 +1,15 @@
+package android.graphics;
+
+public class BitmapFactory {
+
+    public static class Options {
+        public boolean inJustDecodeBounds;
+        public int inSampleSize;
+        public int outWidth;
+        public int outHeight;
+    }
+
+    public static Bitmap decodeFile(String pathName, Options opts) {
+        return null;
+    }
+}
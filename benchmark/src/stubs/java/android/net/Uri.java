@@ -0,0 +1,29 @@
+package android.net;
+
+public class Uri {
+
+    private final String uri;
+
+    private Uri(String uri) {
+        this.uri = uri;
+    }
+
+    public static Uri parse(String uri) {
+        return new Uri(uri);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && uri.equals(((Uri) o).uri);
+    }
+
+    @Override
+    public int hashCode() {
+        return uri.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return uri;
+    }
+}
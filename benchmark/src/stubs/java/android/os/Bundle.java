@@ -0,0 +1,30 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Set;
+
+public class Bundle {
+
+    private final HashMap<String, Object> map = new HashMap<>();
+
+    public void putString(String key, String value) {
+        map.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = map.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public Object get(String key) {
+        return map.get(key);
+    }
+
+    public boolean containsKey(String key) {
+        return map.containsKey(key);
+    }
+
+    public Set<String> keySet() {
+        return map.keySet();
+    }
+}
@@ -0,0 +1,61 @@
+package com.blueshift;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.blueshift.inappmessage.InAppApiCallback;
+import com.blueshift.model.Configuration;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark stand-in for the Blueshift SDK. Calls are counted instead of sent, so the numbers
+ * measure the kit and not the SDK.
+ */
+public class Blueshift {
+
+    private static final Blueshift INSTANCE = new Blueshift();
+
+    private final AtomicLong trackedEvents = new AtomicLong();
+    private final AtomicLong identifyCalls = new AtomicLong();
+    private volatile Object lastParams;
+
+    public static synchronized Blueshift getInstance(Context context) {
+        return INSTANCE;
+    }
+
+    public void initialize(Configuration configuration) {
+    }
+
+    public void trackEvent(String eventName, HashMap<String, Object> params, boolean canBatchThisEvent) {
+        lastParams = params;
+        trackedEvents.incrementAndGet();
+    }
+
+    public void identifyUserByDeviceId(String deviceId, HashMap<String, Object> details, boolean canBatchThisEvent) {
+        lastParams = details;
+        identifyCalls.incrementAndGet();
+    }
+
+    public void registerForInAppMessages(Activity activity) {
+    }
+
+    public void unregisterForInAppMessages(Activity activity) {
+    }
+
+    public void fetchInAppMessages(InAppApiCallback callback) {
+        if (callback != null) callback.onSuccess();
+    }
+
+    public void displayInAppMessages() {
+    }
+
+    public long getTrackedEventCount() {
+        return trackedEvents.get();
+    }
+
+    public long getIdentifyCallCount() {
+        return identifyCalls.get();
+    }
+}
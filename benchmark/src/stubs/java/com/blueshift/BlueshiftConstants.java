@@ -0,0 +1,6 @@
+package com.blueshift;
+
+public class BlueshiftConstants {
+    public static final String KEY_SCREEN_VIEWED = "screen_viewed";
+    public static final String EVENT_PAGE_LOAD = "pageload";
+}
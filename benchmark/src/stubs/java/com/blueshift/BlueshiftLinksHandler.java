@@ -0,0 +1,23 @@
+package com.blueshift;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+
+public class BlueshiftLinksHandler {
+
+    public BlueshiftLinksHandler(Context context) {
+    }
+
+    public static boolean isBlueshiftLink(Uri uri) {
+        return uri != null && uri.toString().contains("/track");
+    }
+
+    public void handleBlueshiftUniversalLinks(Intent intent, BlueshiftLinksListener listener) {
+    }
+
+    public void handleBlueshiftUniversalLinks(Uri link, Bundle extras, BlueshiftLinksListener listener) {
+        if (listener != null) listener.onLinkProcessingComplete(link);
+    }
+}
@@ -0,0 +1,11 @@
+package com.blueshift;
+
+import android.net.Uri;
+
+public interface BlueshiftLinksListener {
+    void onLinkProcessingStart();
+
+    void onLinkProcessingComplete(Uri link);
+
+    void onLinkProcessingError(Exception e, Uri link);
+}
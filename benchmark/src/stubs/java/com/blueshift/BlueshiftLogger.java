@@ -0,0 +1,19 @@
+package com.blueshift;
+
+public class BlueshiftLogger {
+
+    public static void d(String tag, String message) {
+    }
+
+    public static void i(String tag, String message) {
+    }
+
+    public static void w(String tag, String message) {
+    }
+
+    public static void e(String tag, String message) {
+    }
+
+    public static void e(String tag, Throwable throwable) {
+    }
+}
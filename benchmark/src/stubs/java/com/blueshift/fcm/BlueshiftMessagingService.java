@@ -0,0 +1,10 @@
+package com.blueshift.fcm;
+
+import android.content.Context;
+import android.content.Intent;
+
+public class BlueshiftMessagingService {
+
+    public static void handlePushMessage(Context context, Intent intent) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.blueshift.inappmessage;
+
+public interface InAppApiCallback {
+    void onSuccess();
+
+    void onFailure(int errorCode, String errorMessage);
+}
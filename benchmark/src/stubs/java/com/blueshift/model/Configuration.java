@@ -0,0 +1,32 @@
+package com.blueshift.model;
+
+public class Configuration {
+
+    private String apiKey;
+    private int appIcon;
+    private boolean pushEnabled = true;
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    public int getAppIcon() {
+        return appIcon;
+    }
+
+    public void setAppIcon(int appIcon) {
+        this.appIcon = appIcon;
+    }
+
+    public boolean isPushEnabled() {
+        return pushEnabled;
+    }
+
+    public void setPushEnabled(boolean pushEnabled) {
+        this.pushEnabled = pushEnabled;
+    }
+}
@@ -0,0 +1,34 @@
+package com.blueshift.model;
+
+import android.content.Context;
+
+public class UserInfo {
+
+    private static final UserInfo INSTANCE = new UserInfo();
+
+    private String email;
+    private String retailerCustomerId;
+
+    public static synchronized UserInfo getInstance(Context context) {
+        return INSTANCE;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getRetailerCustomerId() {
+        return retailerCustomerId;
+    }
+
+    public void setRetailerCustomerId(String retailerCustomerId) {
+        this.retailerCustomerId = retailerCustomerId;
+    }
+
+    public void save(Context context) {
+    }
+}
@@ -0,0 +1,14 @@
+package com.blueshift.util;
+
+import android.content.Context;
+
+import com.blueshift.model.Configuration;
+
+public class BlueshiftUtils {
+
+    private static final Configuration CONFIGURATION = new Configuration();
+
+    public static Configuration getConfiguration(Context context) {
+        return CONFIGURATION;
+    }
+}
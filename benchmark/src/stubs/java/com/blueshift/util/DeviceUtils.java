@@ -0,0 +1,10 @@
+package com.blueshift.util;
+
+import android.content.Context;
+
+public class DeviceUtils {
+
+    public static String getDeviceId(Context context) {
+        return "benchmark-device-id";
+    }
+}
@@ -0,0 +1,4 @@
+package com.mparticle;
+
+public class BaseEvent {
+}
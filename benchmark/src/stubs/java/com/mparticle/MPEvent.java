@@ -0,0 +1,40 @@
+package com.mparticle;
+
+import java.util.Map;
+
+public class MPEvent extends BaseEvent {
+
+    private final String eventName;
+    private final Map<String, String> customAttributes;
+
+    private MPEvent(Builder builder) {
+        this.eventName = builder.eventName;
+        this.customAttributes = builder.customAttributes;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public Map<String, String> getCustomAttributes() {
+        return customAttributes;
+    }
+
+    public static class Builder {
+        private final String eventName;
+        private Map<String, String> customAttributes;
+
+        public Builder(String eventName) {
+            this.eventName = eventName;
+        }
+
+        public Builder customAttributes(Map<String, String> customAttributes) {
+            this.customAttributes = customAttributes;
+            return this;
+        }
+
+        public MPEvent build() {
+            return new MPEvent(this);
+        }
+    }
+}
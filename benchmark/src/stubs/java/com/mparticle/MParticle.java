@@ -0,0 +1,10 @@
+package com.mparticle;
+
+public class MParticle {
+
+    public enum IdentityType {
+        Other, CustomerId, Facebook, Twitter, Google, Microsoft, Yahoo, Email, Alias,
+        FacebookCustomAudienceId, Other2, Other3, Other4, Other5, Other6, Other7, Other8, Other9,
+        Other10, MobileNumber, PhoneNumber2, PhoneNumber3
+    }
+}
@@ -0,0 +1,145 @@
+package com.mparticle.commerce;
+
+import com.mparticle.BaseEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class CommerceEvent extends BaseEvent {
+
+    private final String productAction;
+    private final String promotionAction;
+    private final List<Product> products;
+    private final List<Impression> impressions;
+    private final List<Promotion> promotions;
+    private final TransactionAttributes transactionAttributes;
+    private final Map<String, String> customAttributes;
+    private final String currency;
+    private final String productListName;
+
+    private CommerceEvent(Builder builder) {
+        this.productAction = builder.productAction;
+        this.promotionAction = builder.promotionAction;
+        this.products = builder.products;
+        this.impressions = builder.impressions;
+        this.promotions = builder.promotions;
+        this.transactionAttributes = builder.transactionAttributes;
+        this.customAttributes = builder.customAttributes;
+        this.currency = builder.currency;
+        this.productListName = builder.productListName;
+    }
+
+    public String getEventName() {
+        return null;
+    }
+
+    public String getProductAction() {
+        return productAction;
+    }
+
+    public String getPromotionAction() {
+        return promotionAction;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public List<Impression> getImpressions() {
+        return impressions;
+    }
+
+    public List<Promotion> getPromotions() {
+        return promotions;
+    }
+
+    public TransactionAttributes getTransactionAttributes() {
+        return transactionAttributes;
+    }
+
+    public Map<String, String> getCustomAttributes() {
+        return customAttributes;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getProductListName() {
+        return productListName;
+    }
+
+    public static class Builder {
+        private String productAction;
+        private String promotionAction;
+        private List<Product> products;
+        private List<Impression> impressions;
+        private List<Promotion> promotions;
+        private TransactionAttributes transactionAttributes;
+        private Map<String, String> customAttributes;
+        private String currency;
+        private String productListName;
+
+        public Builder(String productAction, Product product) {
+            this.productAction = productAction;
+            addProduct(product);
+        }
+
+        public Builder(String promotionAction, Promotion promotion) {
+            this.promotionAction = promotionAction;
+            addPromotion(promotion);
+        }
+
+        public Builder(Impression impression) {
+            addImpression(impression);
+        }
+
+        public Builder addProduct(Product product) {
+            if (products == null) products = new ArrayList<>();
+            products.add(product);
+            return this;
+        }
+
+        public Builder products(List<Product> products) {
+            this.products = products;
+            return this;
+        }
+
+        public Builder addImpression(Impression impression) {
+            if (impressions == null) impressions = new ArrayList<>();
+            impressions.add(impression);
+            return this;
+        }
+
+        public Builder addPromotion(Promotion promotion) {
+            if (promotions == null) promotions = new ArrayList<>();
+            promotions.add(promotion);
+            return this;
+        }
+
+        public Builder transactionAttributes(TransactionAttributes transactionAttributes) {
+            this.transactionAttributes = transactionAttributes;
+            return this;
+        }
+
+        public Builder customAttributes(Map<String, String> customAttributes) {
+            this.customAttributes = customAttributes;
+            return this;
+        }
+
+        public Builder currency(String currency) {
+            this.currency = currency;
+            return this;
+        }
+
+        public Builder productListName(String productListName) {
+            this.productListName = productListName;
+            return this;
+        }
+
+        public CommerceEvent build() {
+            return new CommerceEvent(this);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.mparticle.commerce;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class Impression {
+
+    private final String listName;
+    private final List<Product> products;
+
+    public Impression(String listName, Product... products) {
+        this.listName = listName;
+        this.products = Arrays.asList(products);
+    }
+
+    public String getListName() {
+        return listName;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+}
@@ -0,0 +1,119 @@
+package com.mparticle.commerce;
+
+import java.util.Map;
+
+public class Product {
+
+    public static final String ADD_TO_CART = "add_to_cart";
+    public static final String REMOVE_FROM_CART = "remove_from_cart";
+    public static final String ADD_TO_WISHLIST = "add_to_wishlist";
+    public static final String REMOVE_FROM_WISHLIST = "remove_from_wishlist";
+    public static final String CHECKOUT = "checkout";
+    public static final String CLICK = "click";
+    public static final String DETAIL = "view_detail";
+    public static final String PURCHASE = "purchase";
+    public static final String REFUND = "refund";
+    public static final String CHECKOUT_OPTION = "checkout_option";
+
+    private final String name;
+    private final String sku;
+    private final double unitPrice;
+    private final double quantity;
+    private final String category;
+    private final String brand;
+    private final Map<String, String> customAttributes;
+
+    private Product(Builder builder) {
+        this.name = builder.name;
+        this.sku = builder.sku;
+        this.unitPrice = builder.unitPrice;
+        this.quantity = builder.quantity;
+        this.category = builder.category;
+        this.brand = builder.brand;
+        this.customAttributes = builder.customAttributes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public double getUnitPrice() {
+        return unitPrice;
+    }
+
+    public double getQuantity() {
+        return quantity;
+    }
+
+    public double getTotalAmount() {
+        return unitPrice * quantity;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getVariant() {
+        return null;
+    }
+
+    public String getCouponCode() {
+        return null;
+    }
+
+    public Integer getPosition() {
+        return null;
+    }
+
+    public Map<String, String> getCustomAttributes() {
+        return customAttributes;
+    }
+
+    public static class Builder {
+        private final String name;
+        private final String sku;
+        private final double unitPrice;
+        private double quantity = 1;
+        private String category;
+        private String brand;
+        private Map<String, String> customAttributes;
+
+        public Builder(String name, String sku, double unitPrice) {
+            this.name = name;
+            this.sku = sku;
+            this.unitPrice = unitPrice;
+        }
+
+        public Builder quantity(double quantity) {
+            this.quantity = quantity;
+            return this;
+        }
+
+        public Builder category(String category) {
+            this.category = category;
+            return this;
+        }
+
+        public Builder brand(String brand) {
+            this.brand = brand;
+            return this;
+        }
+
+        public Builder customAttributes(Map<String, String> customAttributes) {
+            this.customAttributes = customAttributes;
+            return this;
+        }
+
+        public Product build() {
+            return new Product(this);
+        }
+    }
+}
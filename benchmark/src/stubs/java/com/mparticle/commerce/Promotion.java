@@ -0,0 +1,48 @@
+package com.mparticle.commerce;
+
+public class Promotion {
+
+    public static final String CLICK = "click";
+    public static final String VIEW = "view";
+
+    private String id;
+    private String name;
+    private String creative;
+    private String position;
+
+    public String getId() {
+        return id;
+    }
+
+    public Promotion setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Promotion setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public String getCreative() {
+        return creative;
+    }
+
+    public Promotion setCreative(String creative) {
+        this.creative = creative;
+        return this;
+    }
+
+    public String getPosition() {
+        return position;
+    }
+
+    public Promotion setPosition(String position) {
+        this.position = position;
+        return this;
+    }
+}
@@ -0,0 +1,64 @@
+package com.mparticle.commerce;
+
+public class TransactionAttributes {
+
+    private String id;
+    private String affiliation;
+    private String couponCode;
+    private Double revenue;
+    private Double tax;
+    private Double shipping;
+
+    public TransactionAttributes(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAffiliation() {
+        return affiliation;
+    }
+
+    public TransactionAttributes setAffiliation(String affiliation) {
+        this.affiliation = affiliation;
+        return this;
+    }
+
+    public String getCouponCode() {
+        return couponCode;
+    }
+
+    public TransactionAttributes setCouponCode(String couponCode) {
+        this.couponCode = couponCode;
+        return this;
+    }
+
+    public Double getRevenue() {
+        return revenue;
+    }
+
+    public TransactionAttributes setRevenue(Double revenue) {
+        this.revenue = revenue;
+        return this;
+    }
+
+    public Double getTax() {
+        return tax;
+    }
+
+    public TransactionAttributes setTax(Double tax) {
+        this.tax = tax;
+        return this;
+    }
+
+    public Double getShipping() {
+        return shipping;
+    }
+
+    public TransactionAttributes setShipping(Double shipping) {
+        this.shipping = shipping;
+        return this;
+    }
+}
@@ -0,0 +1,30 @@
+package com.mparticle.consent;
+
+public class CCPAConsent {
+
+    private final boolean consented;
+
+    private CCPAConsent(Builder builder) {
+        this.consented = builder.consented;
+    }
+
+    public static Builder builder(boolean consented) {
+        return new Builder(consented);
+    }
+
+    public boolean isConsented() {
+        return consented;
+    }
+
+    public static class Builder {
+        private final boolean consented;
+
+        Builder(boolean consented) {
+            this.consented = consented;
+        }
+
+        public CCPAConsent build() {
+            return new CCPAConsent(this);
+        }
+    }
+}
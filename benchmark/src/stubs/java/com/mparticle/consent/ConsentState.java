@@ -0,0 +1,46 @@
+package com.mparticle.consent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConsentState {
+
+    private final Map<String, GDPRConsent> gdprConsentState;
+    private final CCPAConsent ccpaConsentState;
+
+    private ConsentState(Builder builder) {
+        this.gdprConsentState = new HashMap<>(builder.gdprConsentState);
+        this.ccpaConsentState = builder.ccpaConsentState;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Map<String, GDPRConsent> getGDPRConsentState() {
+        return gdprConsentState;
+    }
+
+    public CCPAConsent getCCPAConsentState() {
+        return ccpaConsentState;
+    }
+
+    public static class Builder {
+        private final Map<String, GDPRConsent> gdprConsentState = new HashMap<>();
+        private CCPAConsent ccpaConsentState;
+
+        public Builder addGDPRConsentState(String purpose, GDPRConsent consent) {
+            gdprConsentState.put(purpose, consent);
+            return this;
+        }
+
+        public Builder setCCPAConsentState(CCPAConsent consent) {
+            this.ccpaConsentState = consent;
+            return this;
+        }
+
+        public ConsentState build() {
+            return new ConsentState(this);
+        }
+    }
+}
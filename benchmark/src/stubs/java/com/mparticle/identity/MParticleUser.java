@@ -0,0 +1,15 @@
+package com.mparticle.identity;
+
+import com.mparticle.MParticle;
+import com.mparticle.consent.ConsentState;
+
+import java.util.Map;
+
+public interface MParticleUser {
+
+    long getId();
+
+    Map<MParticle.IdentityType, String> getUserIdentities();
+
+    ConsentState getConsentState();
+}
@@ -0,0 +1,4 @@
+package com.mparticle.kits;
+
+public class FilteredIdentityApiRequest {
+}
@@ -0,0 +1,28 @@
+package com.mparticle.kits;
+
+import com.mparticle.MParticle;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.identity.MParticleUser;
+
+import java.util.Map;
+
+public class FilteredMParticleUser {
+
+    private final MParticleUser user;
+
+    public FilteredMParticleUser(MParticleUser user) {
+        this.user = user;
+    }
+
+    public long getId() {
+        return user.getId();
+    }
+
+    public Map<MParticle.IdentityType, String> getUserIdentities() {
+        return user.getUserIdentities();
+    }
+
+    public ConsentState getConsentState() {
+        return user.getConsentState();
+    }
+}
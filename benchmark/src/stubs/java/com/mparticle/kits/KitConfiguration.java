@@ -0,0 +1,16 @@
+package com.mparticle.kits;
+
+import java.util.Map;
+
+public class KitConfiguration {
+
+    private final Map<String, String> settings;
+
+    public KitConfiguration(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+}
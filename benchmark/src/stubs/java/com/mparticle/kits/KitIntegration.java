@@ -0,0 +1,250 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import com.mparticle.MPEvent;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.consent.ConsentState;
+import com.mparticle.identity.MParticleUser;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Benchmark stand-in for the mParticle kit base class. Only the members used by the kit are
+ * declared; {@link #setContext(Context)} replaces the kit manager wiring.
+ */
+public abstract class KitIntegration {
+
+    private Context context;
+    private KitConfiguration configuration;
+    private final SharedPreferences kitPreferences = new MemoryPreferences();
+
+    public abstract String getName();
+
+    protected abstract List<ReportingMessage> onKitCreate(Map<String, String> settings, Context context);
+
+    public abstract List<ReportingMessage> setOptOut(boolean optedOut);
+
+    public KitIntegration setContext(Context context) {
+        this.context = context;
+        return this;
+    }
+
+    public final Context getContext() {
+        return context;
+    }
+
+    public KitConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public KitIntegration setConfiguration(KitConfiguration configuration) {
+        this.configuration = configuration;
+        return this;
+    }
+
+    /**
+     * The real kit manager returns the current mParticle user; there is none in the benchmark.
+     */
+    public final FilteredMParticleUser getCurrentUser() {
+        return null;
+    }
+
+    public Map<String, String> getSettings() {
+        return configuration != null ? configuration.getSettings() : null;
+    }
+
+    public boolean isDisabled() {
+        return false;
+    }
+
+    protected final SharedPreferences getKitPreferences() {
+        return kitPreferences;
+    }
+
+    public interface EventListener {
+        List<ReportingMessage> leaveBreadcrumb(String breadcrumb);
+
+        List<ReportingMessage> logError(String message, Map<String, String> errorAttributes);
+
+        List<ReportingMessage> logException(Exception exception, Map<String, String> exceptionAttributes, String message);
+
+        List<ReportingMessage> logEvent(MPEvent event);
+
+        List<ReportingMessage> logScreen(String screenName, Map<String, String> screenAttributes);
+    }
+
+    public interface CommerceListener {
+        List<ReportingMessage> logLtvIncrease(BigDecimal valueIncreased, BigDecimal valueTotal, String eventName, Map<String, String> contextInfo);
+
+        List<ReportingMessage> logEvent(CommerceEvent event);
+    }
+
+    public interface UserAttributeListener {
+        void onIncrementUserAttribute(String key, int incrementedBy, String value, FilteredMParticleUser user);
+
+        void onRemoveUserAttribute(String key, FilteredMParticleUser user);
+
+        void onSetUserAttribute(String key, Object value, FilteredMParticleUser user);
+
+        void onSetUserTag(String key, FilteredMParticleUser user);
+
+        void onSetUserAttributeList(String attributeKey, List<String> attributeValueList, FilteredMParticleUser user);
+
+        void onSetAllUserAttributes(Map<String, String> userAttributes, Map<String, List<String>> userAttributeLists, FilteredMParticleUser user);
+
+        boolean supportsAttributeLists();
+
+        void onConsentStateUpdated(ConsentState oldState, ConsentState newState, FilteredMParticleUser user);
+    }
+
+    public interface PushListener {
+        boolean willHandlePushMessage(Intent intent);
+
+        void onPushMessageReceived(Context context, Intent pushIntent);
+
+        boolean onPushRegistration(String instanceId, String senderId);
+    }
+
+    public interface IdentityListener {
+        void onIdentifyCompleted(MParticleUser mParticleUser, FilteredIdentityApiRequest identityApiRequest);
+
+        void onLoginCompleted(MParticleUser mParticleUser, FilteredIdentityApiRequest identityApiRequest);
+
+        void onLogoutCompleted(MParticleUser mParticleUser, FilteredIdentityApiRequest identityApiRequest);
+
+        void onModifyCompleted(MParticleUser mParticleUser, FilteredIdentityApiRequest identityApiRequest);
+
+        void onUserIdentified(MParticleUser mParticleUser);
+    }
+
+    public interface ApplicationStateListener {
+        void onApplicationForeground();
+
+        void onApplicationBackground();
+    }
+
+    /**
+     * In-memory preferences, writes are applied immediately.
+     */
+    private static class MemoryPreferences implements SharedPreferences, SharedPreferences.Editor {
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public synchronized String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public synchronized int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return this;
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private synchronized Editor put(String key, Object value) {
+            values.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putString(String key, String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            return put(key, values);
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            values.remove(key);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            values.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return true;
+        }
+
+        @Override
+        public void apply() {
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.mparticle.kits;
+
+public class KitUtils {
+
+    public static boolean isEmpty(String value) {
+        return value == null || value.length() == 0;
+    }
+}
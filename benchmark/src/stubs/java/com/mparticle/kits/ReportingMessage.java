@@ -0,0 +1,35 @@
+package com.mparticle.kits;
+
+import com.mparticle.BaseEvent;
+
+import java.util.Map;
+
+public class ReportingMessage {
+
+    public interface MessageType {
+        String SCREEN_VIEW = "v";
+        String EVENT = "e";
+        String COMMERCE_EVENT = "cm";
+        String ERROR = "x";
+        String BREADCRUMB = "bc";
+        String OPT_OUT = "o";
+    }
+
+    private final String messageType;
+
+    public ReportingMessage(KitIntegration provider, String messageType, long timestamp, Map<String, ?> attributes) {
+        this.messageType = messageType;
+    }
+
+    public static ReportingMessage fromEvent(KitIntegration provider, BaseEvent event) {
+        return new ReportingMessage(provider, MessageType.EVENT, 0, null);
+    }
+
+    public ReportingMessage setOptOut(boolean optOut) {
+        return this;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+}
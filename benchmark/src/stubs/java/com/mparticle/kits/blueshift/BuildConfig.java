@@ -0,0 +1,6 @@
+package com.mparticle.kits.blueshift;
+
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+    public static final String KIT_VERSION = "benchmark";
+}
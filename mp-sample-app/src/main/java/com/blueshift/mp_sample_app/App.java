@@ -25,17 +25,24 @@ public class App extends Application implements TaskFailureListener, TaskSuccess
         super.onCreate();
         BlueshiftLogger.setLogLevel(BlueshiftLogger.VERBOSE);
 
-        Configuration configuration = new Configuration();
+        // each kit instance gets its own configuration
+        BlueshiftKit.setBlueshiftConfigFactory(new BlueshiftKit.ConfigurationFactory() {
+            @NonNull
+            @Override
+            public Configuration newConfiguration() {
+                Configuration configuration = new Configuration();
 
-        // for push
-        configuration.setAppIcon(R.drawable.ic_stat_name);
+                // for push
+                configuration.setAppIcon(R.drawable.ic_stat_name);
 
-        // in-app
-        configuration.setInAppEnabled(true);
-        configuration.setJavaScriptForInAppWebViewEnabled(true);
-        configuration.setInAppBackgroundFetchEnabled(true);
+                // in-app
+                configuration.setInAppEnabled(true);
+                configuration.setJavaScriptForInAppWebViewEnabled(true);
+                configuration.setInAppBackgroundFetchEnabled(true);
 
-        BlueshiftKit.setBlueshiftConfig(configuration);
+                return configuration;
+            }
+        });
 
         MParticleOptions options = MParticleOptions.builder(this)
                 .credentials(BuildConfig.API_KEY, BuildConfig.API_SECRET)